@@ -0,0 +1,173 @@
+package com;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The abstract syntax tree of a jack class. The parser builds the tree,
+ * the semantic analyser checks it and resolves its identifiers against the
+ * symbol tables, and the code generator turns it into vm code.
+ *
+ * Rather than an object for each node, the tree is an arena of parallel
+ * arrays indexed by node, so a large class only needs a handful of arrays.
+ * Each node has a kind, a line number, a value and an extra number whose
+ * meaning depends on the kind, and links to its first child and next sibling.
+ * Names, types and literals are stored once in a string table and referred
+ * to by their index.
+ *
+ *   CLASS          value: name, extra: line of the token after the class, flags: END_OF_FILE
+ *                  children: STATIC, FIELD and subroutine declarations
+ *   STATIC, FIELD, PARAMETER, LOCAL
+ *                  value: type, extra: line of the token after the first name
+ *                  children: a NAME for each variable
+ *   CONSTRUCTOR, FUNCTION, METHOD
+ *                  value: name, extra: number of local variables, set by the semantic analyser
+ *                  children: TYPE, PARAMETER for each parameter, BLOCK
+ *   TYPE           value: type
+ *   BLOCK          extra: line of the closing brace, children: statements
+ *   LET            children: NAME, index expression if an array element, expression
+ *   IF             children: condition, BLOCK, BLOCK if there is an else
+ *   WHILE          children: condition, BLOCK
+ *   DO             children: CALL
+ *   RETURN         extra: line of the semicolon, flags: VOID, children: expression if any
+ *   NAME           value: name, children: NAME after the '.' if any
+ *   BINARY, UNARY  value: ordinal of the operator, children: operands
+ *   INTEGER        value: digits of the constant
+ *   STRING         value: characters of the string
+ *   KEYWORD        value: ordinal of true, false or null
+ *   VARIABLE       flags: PUSHED, THIS_POINTER, children: NAME
+ *   ARRAY_ELEMENT  extra: line of the '[', flags: PUSHED, children: NAME, index expression
+ *   CALL           value: full name of the subroutine, set by the semantic analyser
+ *                  extra: line of the closing parenthesis, flags: PUSHED, THIS_POINTER
+ *                  children: NAME, arguments
+ *
+ * The semantic analyser sets the symbol of each NAME to the symbol it resolved to,
+ * and the symbol of a CALL to the object it is called on.
+ */
+public class Ast {
+    public static final int NONE = -1;                      // Index of a node or string that doesn't exist.
+
+    public static final int END_OF_FILE = 1;                // The class is followed by the end of the file.
+    public static final int VOID = 2;                       // The subroutine being returned from is void.
+    public static final int PUSHED = 4;                     // The symbol of the name is pushed.
+    public static final int THIS_POINTER = 8;               // 'this' is pushed.
+
+    /**
+     * The kinds of node in the tree.
+     */
+    public enum Kind {
+        CLASS, STATIC, FIELD, PARAMETER, LOCAL, CONSTRUCTOR, FUNCTION, METHOD, TYPE, BLOCK,
+        LET, IF, WHILE, DO, RETURN, NAME, BINARY, UNARY, INTEGER, STRING, KEYWORD, VARIABLE, ARRAY_ELEMENT, CALL
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private byte[] kinds;                                   // The ordinal of the kind of each node.
+    private byte[] flags;                                   // The flags of each node.
+    private int[] lines;                                    // The line each node is reported at.
+    private int[] values;                                   // The value of each node.
+    private int[] extras;                                   // The extra number of each node.
+    private int[] firstChildren;                            // The first child of each node.
+    private int[] nextSiblings;                             // The next sibling of each node.
+    private Symbol[] symbols;                               // The symbol each node was resolved to.
+    private int size;                                       // The number of nodes.
+
+    private final ArrayList<String> strings;                // The names, types and literals, by index.
+    private final HashMap<String, Integer> stringIndexes;   // The index of each string.
+
+    /**
+     * Create an empty tree.
+     */
+    public Ast() {
+        int capacity = 1024;
+        this.kinds = new byte[capacity];
+        this.flags = new byte[capacity];
+        this.lines = new int[capacity];
+        this.values = new int[capacity];
+        this.extras = new int[capacity];
+        this.firstChildren = new int[capacity];
+        this.nextSiblings = new int[capacity];
+        this.symbols = new Symbol[capacity];
+        this.strings = new ArrayList<>();
+        this.stringIndexes = new HashMap<>();
+    }
+
+    /**
+     * Add a node to the tree. Its children must have been linked together already.
+     * @param kind the kind of node.
+     * @param line the line the node is reported at.
+     * @param value the value of the node.
+     * @param extra the extra number of the node.
+     * @param firstChild the first child of the node, or NONE.
+     * @return the node.
+     */
+    public int add(Kind kind, int line, int value, int extra, int firstChild) {
+        if (this.size == this.kinds.length)
+            this.grow();
+
+        int node = this.size++;
+        this.kinds[node] = (byte) kind.ordinal();
+        this.lines[node] = line;
+        this.values[node] = value;
+        this.extras[node] = extra;
+        this.firstChildren[node] = firstChild;
+        this.nextSiblings[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Double the capacity of the tree.
+     */
+    private void grow() {
+        int capacity = this.kinds.length * 2;
+        this.kinds = Arrays.copyOf(this.kinds, capacity);
+        this.flags = Arrays.copyOf(this.flags, capacity);
+        this.lines = Arrays.copyOf(this.lines, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+        this.extras = Arrays.copyOf(this.extras, capacity);
+        this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+        this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+        this.symbols = Arrays.copyOf(this.symbols, capacity);
+    }
+
+    /**
+     * Find the index of a string, adding it to the string table if needed.
+     * @param string the string.
+     * @return the index of the string.
+     */
+    public int string(String string) {
+        Integer index = this.stringIndexes.get(string);
+
+        if (index == null) {
+            index = this.strings.size();
+            this.strings.add(string);
+            this.stringIndexes.put(string, index);
+        }
+
+        return index;
+    }
+
+    /**
+     * Getters.
+     */
+    public int getSize() { return this.size; }
+    public Kind getKind(int node) { return KINDS[this.kinds[node]]; }
+    public int getLine(int node) { return this.lines[node]; }
+    public int getValue(int node) { return this.values[node]; }
+    public int getExtra(int node) { return this.extras[node]; }
+    public int getFirstChild(int node) { return this.firstChildren[node]; }
+    public int getNextSibling(int node) { return this.nextSiblings[node]; }
+    public Symbol getSymbol(int node) { return this.symbols[node]; }
+    public boolean hasFlag(int node, int flag) { return (this.flags[node] & flag) != 0; }
+    public String getString(int node) { return this.strings.get(this.values[node]); }
+
+    /**
+     * Setters.
+     */
+    public void setValue(int node, int value) { this.values[node] = value; }
+    public void setExtra(int node, int extra) { this.extras[node] = extra; }
+    public void setNextSibling(int node, int sibling) { this.nextSiblings[node] = sibling; }
+    public void setSymbol(int node, Symbol symbol) { this.symbols[node] = symbol; }
+    public void setFlag(int node, int flag) { this.flags[node] |= flag; }
+}
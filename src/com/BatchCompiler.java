@@ -0,0 +1,506 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The batch compiler compiles every file that is submitted to it and keeps
+ * the result of each one. Files can be submitted while they are still being
+ * found, and when more than one job is allowed they are compiled on a pool
+ * of worker threads. Messages are always printed in the order the files
+ * were submitted.
+ *
+ * When the whole program is checked, every file is first skimmed to build the
+ * index of class interfaces, and the files are only compiled once the batch is
+ * finished, so that the references to other classes can be checked against it.
+ *
+ * When string literals are pooled, the static variables declared by every file
+ * are counted first, and the files are only compiled once the batch is finished,
+ * so that the static variables left over can be shared between their pools.
+ */
+public class BatchCompiler {
+    private final ExecutorService pool;                     // Worker threads, null when compiling one file at a time.
+    private final CompileCache cache;                       // Cache of previously compiled files, null if not used.
+    private final ClassIndex index;                         // Interface of every class in the batch, null unless the whole program is checked.
+    private final int optimizationLevel;                    // How much the vm code of each file is optimized, 0 for not at all.
+    private final PrintStream out;                          // Stream that progress messages are written to.
+    private final PrintStream err;                          // Stream that errors and warnings are written to.
+
+    private final ArrayList<Slot> slots;                    // Every file that has been submitted, in order.
+    private final ConcurrentHashMap<String, String> signatures; // Signature hash of each class in the batch, by class name.
+    private int poolSize;                                   // The size of the string pool of each class, once the batch is finished.
+    private int printed;                                    // The number of files whose messages have been printed.
+
+    /**
+     * Create a batch compiler, which can check the references between the classes of the batch.
+     * @param jobs the number of files that can be compiled at once.
+     * @param cache the cache used to skip files that haven't changed, or null to compile every file.
+     * @param wholeProgram whether to check the references to other classes against every class in the batch.
+     * @param optimizationLevel 0 to write the vm code as generated, 1 to run the peephole optimizer over it, 2 to also pool string literals.
+     * @param out the stream that progress messages are written to.
+     * @param err the stream that errors and warnings are written to.
+     */
+    public BatchCompiler(int jobs, CompileCache cache, boolean wholeProgram, int optimizationLevel, PrintStream out, PrintStream err) {
+        this.pool = jobs > 1 ? Executors.newFixedThreadPool(jobs) : null;
+        this.cache = cache;
+        this.index = wholeProgram ? new ClassIndex() : null;
+        this.optimizationLevel = optimizationLevel;
+        this.out = out;
+        this.err = err;
+        this.slots = new ArrayList<>();
+        this.signatures = new ConcurrentHashMap<>();
+        this.printed = 0;
+    }
+
+    /**
+     * Compile a file, or queue it to be compiled by the worker threads.
+     * A file that is in the cache is held back until every changed file has been
+     * compiled, since it can only be reused if the classes it depends on still
+     * have the same signature. When the whole program is checked, every file is
+     * held back until the interface of each class in the batch is known, and when
+     * string literals are pooled, until the static variables of each class are known.
+     * @param file the file to be compiled.
+     */
+    public void submit(File file) {
+        Slot slot = new Slot(file);
+        this.slots.add(slot);
+
+        if (this.index != null)
+            slot.indexed = this.start(() -> this.index(slot));
+
+        // The vm code depends on the size of the string pool, so the cache is only checked once it is known
+        if (this.optimizationLevel >= 2) {
+            slot.statics = this.start(() -> this.countStatics(slot));
+            return;
+        }
+
+        if (this.cache != null && this.lookup(slot))
+            return;
+
+        if (this.index != null)
+            return;
+
+        this.schedule(slot, () -> this.compile(slot));
+
+        // Print anything that has already finished so the output keeps up with the compilation
+        this.drain(false);
+    }
+
+    /**
+     * Wait for every submitted file to finish compiling.
+     * @return the result of compiling each file, in the order they were submitted.
+     */
+    public ArrayList<CompileResult> finish() {
+        ArrayList<CompileResult> results = new ArrayList<>();
+
+        try {
+            // The static variables left over are shared between the string pools of the classes
+            if (this.optimizationLevel >= 2) {
+                int statics = 0;
+                for (Slot slot : this.slots)
+                    statics += getResult(slot.statics);
+
+                this.poolSize = CodeGenerator.poolSize(statics, this.slots.size());
+
+                if (this.cache != null) {
+                    for (Slot slot : this.slots)
+                        this.lookup(slot);
+                }
+            }
+
+            if (this.index != null) {
+                for (Slot slot : this.slots)
+                    getResult(slot.indexed);
+            }
+
+            // The changed files can be compiled once every class is in the index and the size of the pools is known
+            if (this.index != null || this.optimizationLevel >= 2) {
+                for (Slot slot : this.slots) {
+                    if (slot.entry == null)
+                        this.schedule(slot, () -> this.compile(slot));
+                }
+            }
+
+            // The signature of every changed class needs to be known before
+            // the cached files can be checked
+            for (Slot slot : this.slots) {
+                if (slot.future != null)
+                    getResult(slot.future);
+            }
+
+            for (Slot slot : this.slots) {
+                if (slot.future == null && this.isUpToDate(slot.entry))
+                    this.schedule(slot, () -> this.restore(slot));
+                else if (slot.future == null)
+                    this.schedule(slot, () -> this.compile(slot));
+            }
+
+            this.drain(true);
+            this.storeDependencies();
+        } finally {
+            if (this.pool != null)
+                this.pool.shutdown();
+        }
+
+        for (Slot slot : this.slots)
+            results.add(slot.result);
+
+        return results;
+    }
+
+    /**
+     * Run a task for a file, on the worker threads if there are any.
+     * @param slot the file the task is for.
+     * @param task the task that compiles or restores the file.
+     */
+    private void schedule(Slot slot, Callable<CompileResult> task) {
+        slot.future = this.start(task);
+    }
+
+    /**
+     * Start a task, on the worker threads if there are any, otherwise running it straight away.
+     * @param task the task.
+     * @return the pending result of the task.
+     */
+    private <T> Future<T> start(Callable<T> task) {
+        if (this.pool != null)
+            return this.pool.submit(task);
+
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    /**
+     * Print the messages of the pending files, in the order that they were submitted.
+     * @param wait whether to wait for files that are yet to finish or stop at the first one.
+     */
+    private void drain(boolean wait) {
+        while (this.printed < this.slots.size()) {
+            Slot slot = this.slots.get(this.printed);
+
+            if (slot.future == null || (!wait && !slot.future.isDone()))
+                break;
+
+            slot.result = getResult(slot.future);
+            slot.buffer.replay(this.out, this.err);
+            slot.buffer = null;
+            this.printed++;
+        }
+    }
+
+    /**
+     * Wait for a task of a file to finish.
+     * @param result the pending result of the task.
+     * @return the result of the task.
+     */
+    private static <T> T getResult(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Check whether a cache entry can be reused, by checking that every class it depends on
+     * still has the signature that it had when the entry was compiled.
+     * @param entry the cache entry.
+     * @return true if the cached vm code can be reused.
+     */
+    private boolean isUpToDate(CompileCache.Entry entry) {
+        for (Map.Entry<String, String> dependency : entry.getDependencies().entrySet()) {
+            if (!dependency.getValue().equals(this.signatures.getOrDefault(dependency.getKey(), "-")))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Record the signatures of the classes that each newly compiled file depends on,
+     * completing its cache entry. This happens once the whole batch has compiled so
+     * that the signature of every class in the batch is known.
+     */
+    private void storeDependencies() {
+        for (Slot slot : this.slots) {
+            CompileResult result = slot.result;
+
+            if (slot.key == null || slot.restored || !result.isSuccess())
+                continue;
+
+            TreeMap<String, String> dependencies = new TreeMap<>();
+            for (String dependency : result.getDependencies())
+                dependencies.put(dependency, this.signatures.getOrDefault(dependency, "-"));
+
+            try {
+                this.cache.storeDependencies(slot.key, result.getClassName(), result.getSignature(), dependencies);
+            } catch (IOException e) {
+                cacheWarning(this.err, e);
+            }
+        }
+    }
+
+    /**
+     * Print the number of files that compiled along with each file that failed.
+     * @param results the result of compiling each file.
+     */
+    public void printSummary(ArrayList<CompileResult> results) {
+        int failed = 0;
+
+        for (CompileResult result : results) {
+            if (!result.isSuccess())
+                failed++;
+        }
+
+        this.out.println("[Summary] " + (results.size() - failed) + " of " + results.size()
+                + " files compiled successfully.");
+
+        if (failed > 0) {
+            for (CompileResult result : results) {
+                if (!result.isSuccess())
+                    this.err.println(CommandLineText.ANSI_RED + "[Failed] " + result.getFile().getPath()
+                            + " (" + result.getStatus() + ")" + CommandLineText.ANSI_RESET);
+            }
+        }
+    }
+
+    /**
+     * Add the interface of the class in a submitted file to the index. The interface
+     * is skimmed from the source unless it has been cached. A file that can't be read
+     * is left out, and the error is reported when it is compiled.
+     * @param slot the file to index.
+     * @return nothing.
+     */
+    private Void index(Slot slot) {
+        TokenCache tokens = this.cache != null ? this.cache.getTokens() : null;
+        String key = null, signature = null;
+
+        try {
+            if (this.cache != null) {
+                // The interface doesn't depend on the mode, so every mode shares it
+                key = this.cache.key(slot.file, false, 0, 0);
+                signature = this.cache.lookupInterface(key);
+            }
+        } catch (IOException e) {
+            // The interface is skimmed again
+        }
+
+        try {
+            if (signature == null) {
+                signature = ClassIndex.skim(tokens != null ? tokens.open(slot.file) : new Tokenizer(slot.file));
+
+                if (key != null && signature != null)
+                    this.cache.storeInterface(key, signature);
+            }
+        } catch (IOException e) {
+            // Reported when the file is compiled
+        }
+
+        if (signature != null)
+            this.index.add(signature);
+
+        return null;
+    }
+
+    /**
+     * Count the static variables that the class in a submitted file declares. A file
+     * that can't be read or parsed is counted as having none, and the error is
+     * reported when it is compiled.
+     * @param slot the file whose static variables are counted.
+     * @return the number of static variables.
+     */
+    private Integer countStatics(Slot slot) {
+        TokenCache tokens = this.cache != null ? this.cache.getTokens() : null;
+
+        try {
+            Parser parser = new Parser(tokens != null ? tokens.open(slot.file) : new Tokenizer(slot.file),
+                    new PrintStream(OutputStream.nullOutputStream()));
+            return CodeGenerator.staticCount(parser.getAst(), parser.skimClass());
+        } catch (IOException | ParserException | TokenizerException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Look up a submitted file in the cache.
+     * @param slot the file to look up.
+     * @return true if the file is in the cache.
+     */
+    private boolean lookup(Slot slot) {
+        try {
+            slot.key = this.cache.key(slot.file, this.index != null, this.optimizationLevel, this.poolSize);
+            slot.entry = this.cache.lookup(slot.key);
+        } catch (IOException e) {
+            cacheWarning(slot.buffer.getErr(), e);
+            slot.key = null;
+        }
+
+        if (slot.entry == null)
+            return false;
+
+        this.signatures.put(slot.entry.getClassName(), slot.entry.getSignature());
+        return true;
+    }
+
+    /**
+     * Compile a submitted file, storing its vm code in the cache if it compiles.
+     * @param slot the file to compile.
+     * @return the result of the compilation.
+     */
+    private CompileResult compile(Slot slot) {
+        TokenCache tokens = this.cache != null ? this.cache.getTokens() : null;
+        CompileResult result = compile(slot.file, tokens, this.index, this.optimizationLevel, this.poolSize,
+                slot.buffer.getOut(), slot.buffer.getErr());
+
+        if (result.isSuccess())
+            this.signatures.put(result.getClassName(), result.getSignature());
+
+        // Only successful files are cached so that errors are always reported
+        if (slot.key != null && result.isSuccess()) {
+            try {
+                this.cache.store(slot.key, VMWriter.outputFile(slot.file));
+            } catch (IOException e) {
+                cacheWarning(slot.buffer.getErr(), e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy the vm code of a submitted file from the cache, compiling it instead
+     * if the vm code can't be copied.
+     * @param slot the file to restore.
+     * @return the result of the compilation that was cached.
+     */
+    private CompileResult restore(Slot slot) {
+        CompileCache.Entry entry = slot.entry;
+
+        try {
+            this.cache.restore(entry, VMWriter.outputFile(slot.file));
+        } catch (IOException e) {
+            cacheWarning(slot.buffer.getErr(), e);
+            return this.compile(slot);
+        }
+
+        slot.buffer.getOut().println("[Up to date] " + slot.file.getPath());
+        slot.restored = true;
+
+        return new CompileResult(slot.file, CompileResult.Status.SUCCESS, entry.getClassName(),
+                entry.getSignature(), entry.getDependencies().keySet());
+    }
+
+    /**
+     * Print a warning that the cache could not be used.
+     * @param err the stream to print to.
+     * @param e the exception that occurred.
+     */
+    private static void cacheWarning(PrintStream err, IOException e) {
+        err.println(CommandLineText.ANSI_YELLOW + "[Cache warning] " + e.getMessage() + CommandLineText.ANSI_RESET);
+    }
+
+    /**
+     * A file that has been submitted to the batch compiler.
+     */
+    private static class Slot {
+        private final File file;                    // The file to compile.
+        private ConsoleBuffer buffer;               // Messages written while compiling the file.
+        private String key;                         // Cache key of the file, null if not cached.
+        private CompileCache.Entry entry;           // Cache entry found for the file, null if it needs compiling.
+        private Future<Void> indexed;               // Pending addition of the class to the index, null unless the whole program is checked.
+        private Future<Integer> statics;            // Pending count of the static variables of the class, null unless strings are pooled.
+        private Future<CompileResult> future;       // Pending result, null until the file is scheduled.
+        private CompileResult result;               // The result, once it has been printed.
+        private boolean restored;                   // Whether the vm code was copied from the cache.
+
+        Slot(File file) {
+            this.file = file;
+            this.buffer = new ConsoleBuffer();
+        }
+    }
+
+    /**
+     * Compile the file provided turning it into virtual machine code to be
+     * used and read by the jack assembler. Compilation involves tokenizing
+     * the file input stream and then parsing each token using a top down parser.
+     * The parser also provides semantic analysis on the input '.jack' file. Once
+     * parsed the code will then be turned into vm code ready for the jack assembler.
+     * The tokens can be read from a token cache, and the references to other
+     * classes can be checked against the interfaces in a class index.
+     *
+     * @param file the file to be compiled
+     * @param tokens the cache of token streams, or null to always tokenize the file.
+     * @param index the interface of every class in the program, or null to leave references to other classes unchecked.
+     * @param optimizationLevel 0 to write the vm code as generated, 1 to run the peephole optimizer over it, 2 to also pool string literals.
+     * @param poolSize the most static variables that the string pool of the class can use at level 2.
+     * @param out the stream that progress messages are written to.
+     * @param err the stream that errors are written to.
+     * @return the result of the compilation.
+     */
+    public static CompileResult compile(File file, TokenCache tokens, ClassIndex index, int optimizationLevel, int poolSize,
+                                        PrintStream out, PrintStream err) {
+        out.println("[Compiling] " + file.getPath());
+
+        try {
+            Tokenizer tokenizer = null;
+
+            if (tokens != null) {
+                try {
+                    tokenizer = tokens.open(file);
+                } catch (IOException e) {
+                    cacheWarning(err, e);
+                }
+            }
+
+            CompilationEngine compilationEngine = tokenizer != null
+                    ? new CompilationEngine(file, tokenizer, out, err)
+                    : new CompilationEngine(file, out, err);
+            compilationEngine.setClassIndex(index);
+            compilationEngine.setOptimizationLevel(optimizationLevel);
+            compilationEngine.setStringPoolSize(poolSize);
+
+            // Try running the compiler
+            try {
+                compilationEngine.run();
+            } catch (ParserException e) {
+                compilationEngine.deleteVMCode();
+                err.println(CommandLineText.ANSI_RED + "[Parsing error] Line "
+                        + e.getLineNumber() + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
+                return new CompileResult(file, CompileResult.Status.PARSER_ERROR);
+            } catch (TokenizerException e) {
+                compilationEngine.deleteVMCode();
+                err.println(CommandLineText.ANSI_RED + "[Tokenizer Error] Line "
+                        + e.getLineNumber() + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
+                return new CompileResult(file, CompileResult.Status.TOKENIZER_ERROR);
+            }
+
+            if (!compilationEngine.getSyntaxStatus())
+                return new CompileResult(file, CompileResult.Status.PARSER_ERROR);
+
+            if (!compilationEngine.getSemanticStatus())
+                return new CompileResult(file, CompileResult.Status.SEMANTIC_ERROR);
+
+            return new CompileResult(file, CompileResult.Status.SUCCESS, compilationEngine.getClassName(),
+                    CompileCache.signatureHash(compilationEngine.getSignature()), compilationEngine.getDependencies());
+        } catch (IOException e) {
+            err.println(CommandLineText.ANSI_RED + "[IO Error] " + e.getMessage() + CommandLineText.ANSI_RESET);
+            return new CompileResult(file, CompileResult.Status.IO_ERROR);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The class index holds the interface of every class in a program: the kind,
+ * return type and argument types of each of its subroutines. When the whole program is
+ * compiled the index is built from every file before any of them are
+ * compiled, so that the references each class makes to the others can be
+ * checked. The classes of the jack standard library are always in the index.
+ *
+ * The interface of a class is read from its signature, which is found by
+ * skimming the source: only the declarations of the class and its members
+ * are parsed, and the body of each subroutine is skipped by counting braces.
+ * The signature is small enough to be cached, one subroutine per line:
+ *
+ *   class name
+ *   kind type name(argumentType,argumentType)
+ */
+public class ClassIndex {
+    // The signatures of the classes of the jack standard library
+    private static final String[] STANDARD_LIBRARY = {
+            "class Array\nfunction Array new(int)\nmethod void dispose()\n",
+            "class Keyboard\nfunction void init()\nfunction char keyPressed()\nfunction char readChar()\n"
+                    + "function String readLine(String)\nfunction int readInt(String)\n",
+            "class Math\nfunction void init()\nfunction int abs(int)\nfunction int multiply(int,int)\n"
+                    + "function int divide(int,int)\nfunction int min(int,int)\nfunction int max(int,int)\n"
+                    + "function int sqrt(int)\n",
+            "class Memory\nfunction void init()\nfunction int peek(int)\nfunction void poke(int,int)\n"
+                    + "function Array alloc(int)\nfunction void deAlloc(Array)\n",
+            "class Output\nfunction void init()\nfunction void moveCursor(int,int)\nfunction void printChar(char)\n"
+                    + "function void printString(String)\nfunction void printInt(int)\nfunction void println()\n"
+                    + "function void backSpace()\n",
+            "class Screen\nfunction void init()\nfunction void clearScreen()\nfunction void setColor(boolean)\n"
+                    + "function void drawPixel(int,int)\nfunction void drawLine(int,int,int,int)\n"
+                    + "function void drawRectangle(int,int,int,int)\nfunction void drawCircle(int,int,int)\n",
+            "class String\nconstructor String new(int)\nmethod void dispose()\nmethod int length()\n"
+                    + "method char charAt(int)\nmethod void setCharAt(int,char)\nmethod String appendChar(char)\n"
+                    + "method void eraseLastChar()\nmethod int intValue()\nmethod void setInt(int)\n"
+                    + "function char backSpace()\nfunction char doubleQuote()\nfunction char newLine()\n",
+            "class Sys\nfunction void init()\nfunction void halt()\nfunction void error(int)\nfunction void wait(int)\n"
+    };
+
+    private final ConcurrentHashMap<String, HashMap<String, Subroutine>> classes; // The subroutines of each class, by name.
+
+    /**
+     * Create an index that holds the classes of the jack standard library.
+     */
+    public ClassIndex() {
+        this.classes = new ConcurrentHashMap<>();
+
+        for (String signature : STANDARD_LIBRARY)
+            this.add(signature);
+    }
+
+    /**
+     * Add the interface of a class, replacing any class of the same name.
+     * @param signature the signature of the class.
+     */
+    public void add(String signature) {
+        String[] lines = signature.split("\n");
+        HashMap<String, Subroutine> subroutines = new HashMap<>();
+
+        for (int i = 1; i < lines.length; i++) {
+            // kind type name(argumentType,argumentType)
+            String[] parts = lines[i].split(" ", 3);
+            int open = parts[2].indexOf('(');
+            String arguments = parts[2].substring(open + 1, parts[2].length() - 1);
+
+            ArrayList<String> argumentTypes = new ArrayList<>();
+            for (String argument : arguments.split(",")) {
+                if (!argument.isEmpty())
+                    argumentTypes.add(argument);
+            }
+
+            subroutines.put(parts[2].substring(0, open), new Subroutine(Symbol.Kind.fromString(parts[0]), parts[1], argumentTypes));
+        }
+
+        this.classes.put(lines[0].substring("class ".length()), subroutines);
+    }
+
+    /**
+     * Check whether a class is in the index.
+     * @param className the name of the class.
+     * @return true if the class is in the index.
+     */
+    public boolean containsClass(String className) {
+        return this.classes.containsKey(className);
+    }
+
+    /**
+     * Find a subroutine of a class.
+     * @param className the name of the class.
+     * @param name the name of the subroutine.
+     * @return the subroutine, or null if the class or subroutine isn't in the index.
+     */
+    public Subroutine findSubroutine(String className, String name) {
+        HashMap<String, Subroutine> subroutines = this.classes.get(className);
+        return subroutines != null ? subroutines.get(name) : null;
+    }
+
+    /**
+     * Get the signature of the class whose source code is read by the tokenizer provided.
+     * The source is only skimmed, and errors are left to be reported when the file is
+     * compiled. If the file has syntax errors, the members that could still be parsed
+     * are in the signature.
+     * @param tokenizer the tokenizer that reads the source code of the class.
+     * @return the signature of the class, or null if its declaration couldn't be parsed.
+     */
+    public static String skim(Tokenizer tokenizer) {
+        Parser parser = new Parser(tokenizer, new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            return signature(parser.getAst(), parser.skimClass());
+        } catch (ParserException | TokenizerException e) {
+            // The class declaration couldn't be parsed, so there is no signature
+            return null;
+        }
+    }
+
+    /**
+     * Get the signature of a class that has been parsed or skimmed.
+     * @param ast the tree that the class was parsed into.
+     * @param classDeclaration the class node.
+     * @return the signature of the class.
+     */
+    public static String signature(Ast ast, int classDeclaration) {
+        TreeSet<String> subroutines = new TreeSet<>();
+
+        for (int member = ast.getFirstChild(classDeclaration); member != Ast.NONE; member = ast.getNextSibling(member)) {
+            Ast.Kind kind = ast.getKind(member);
+
+            // Class variables can't be used by other classes
+            if (kind == Ast.Kind.STATIC || kind == Ast.Kind.FIELD)
+                continue;
+
+            // The type is followed by the parameters
+            int type = ast.getFirstChild(member);
+            StringBuilder subroutine = new StringBuilder(Symbol.Kind.valueOf(kind.name()).getName() + " "
+                    + ast.getString(type) + " " + ast.getString(member) + "(");
+
+            for (int parameter = ast.getNextSibling(type); ast.getKind(parameter) == Ast.Kind.PARAMETER; parameter = ast.getNextSibling(parameter))
+                subroutine.append(parameter != ast.getNextSibling(type) ? "," : "").append(ast.getString(parameter));
+            subroutines.add(subroutine.append(")").toString());
+        }
+
+        return "class " + ast.getString(classDeclaration) + "\n" + String.join("\n", subroutines) + "\n";
+    }
+
+    /**
+     * A subroutine of a class in the index.
+     */
+    public static class Subroutine {
+        private final Symbol.Kind kind;                     // Whether the subroutine is a constructor, function or method.
+        private final String type;                          // The type that the subroutine returns.
+        private final ArrayList<String> argumentTypes;      // The type of each argument, not including 'this'.
+
+        Subroutine(Symbol.Kind kind, String type, ArrayList<String> argumentTypes) {
+            this.kind = kind;
+            this.type = type;
+            this.argumentTypes = argumentTypes;
+        }
+
+        /**
+         * Getters.
+         */
+        public Symbol.Kind getKind() { return this.kind; }
+        public String getType() { return this.type; }
+        public ArrayList<String> getArgumentTypes() { return this.argumentTypes; }
+    }
+}
@@ -0,0 +1,507 @@
+package com;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The code generator walks the abstract syntax tree of a class once it has
+ * been semantically analysed, building the vm code of each subroutine. It
+ * relies on the semantic analyser having resolved every identifier in the
+ * tree. The text of the vm code is only written once the whole class has
+ * been generated.
+ */
+public class CodeGenerator {
+    private static final Token.Kind[] TOKEN_KINDS = Token.Kind.values();
+    private static final int STRING_NEW_CYCLES = 400;       // Estimated cycles to push the length and call String.new.
+    private static final int APPEND_CHAR_CYCLES = 110;      // Estimated cycles to push a character and call String.appendChar.
+    private static final int POOLED_CYCLES = 25;            // Estimated cycles to check that a pooled string has been built and push it.
+    private static final int STRING_HEAP_WORDS = 5;         // Heap used by a string besides its characters: its fields and two block headers.
+    private static final int STATIC_WORDS = 240;            // Static variables shared by every class of a program, RAM 16 to 255.
+    private static final int MAX_POOL_SIZE = 16;            // The most static variables that the string pool of a class uses.
+
+    private final Ast ast;                                  // The tree that the vm code is written from.
+    private final VMWriter w;                               // Object that writes vm code to file.
+    private final ArrayList<VMCode> subroutines;            // The vm code of each subroutine generated so far.
+    private VMCode code;                                    // The vm code of the subroutine being generated.
+    private int labelCounter;                               // Counter used to generate a unique label id for if and while statements.
+    private HashMap<String, Integer> pool;                  // The static variable that holds each string literal, null if literals aren't pooled.
+    private int poolSize;                                   // The most static variables that the string pool can use.
+    private int staticCount;                                // The number of static variables declared by the class.
+    private int pooledLiterals;                             // The number of string literals that use the pool.
+    private int savedHeap;                                  // Estimated heap words saved each time every pooled literal is evaluated again.
+    private int savedCycles;                                // Estimated cycles saved each time every pooled literal is evaluated again.
+
+    private int[] expressions;                              // The expressions that are still to be generated.
+    private int expressionCount;                            // The number of expressions on the stack.
+
+    /**
+     * Create a code generator.
+     * @param ast the tree that the vm code is written from.
+     * @param writer the writer that the vm code is written to.
+     */
+    public CodeGenerator(Ast ast, VMWriter writer) {
+        this.ast = ast;
+        this.w = writer;
+        this.subroutines = new ArrayList<>();
+        this.expressions = new int[16];
+    }
+
+    /**
+     * Get the vm code of each subroutine that has been generated.
+     * @return the vm code, in the order the subroutines were declared.
+     */
+    public ArrayList<VMCode> getSubroutines() { return this.subroutines; }
+
+    /**
+     * Set how many string literals are pooled. Each distinct literal is built the first time it is
+     * evaluated and kept in a static variable of its own, numbered after the class's statics, which
+     * every later evaluation pushes instead of building a new string. A pooled string is shared,
+     * so it must not be disposed or changed. Once the pool is full, any other literal is built
+     * each time as before.
+     * @param poolSize the most static variables that the pool can use, 0 to not pool literals.
+     */
+    public void setStringPooling(int poolSize) {
+        this.pool = poolSize > 0 ? new HashMap<>() : null;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Get the size of the string pool of each class of a program. Every class shares the
+     * 240 static variables, so the variables that the classes don't declare are split
+     * evenly between their pools, with at most 16 for each class.
+     * @param staticCount the number of static variables declared by every class of the program.
+     * @param classCount the number of classes in the program.
+     * @return the most static variables that the string pool of each class can use.
+     */
+    public static int poolSize(int staticCount, int classCount) {
+        if (classCount == 0 || staticCount >= STATIC_WORDS)
+            return 0;
+
+        return Math.min(MAX_POOL_SIZE, (STATIC_WORDS - staticCount) / classCount);
+    }
+
+    /**
+     * Count the static variables that a class declares.
+     * @param ast the tree that the class was parsed into.
+     * @param classDeclaration the class node.
+     * @return the number of static variables.
+     */
+    public static int staticCount(Ast ast, int classDeclaration) {
+        int count = 0;
+
+        for (int member = ast.getFirstChild(classDeclaration); member != Ast.NONE; member = ast.getNextSibling(member)) {
+            if (ast.getKind(member) == Ast.Kind.STATIC) {
+                for (int name = ast.getFirstChild(member); name != Ast.NONE; name = ast.getNextSibling(name))
+                    count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Getters for the string pool. The savings are estimates, for the Jack OS, of the heap and
+     * cycles that are saved each time every pooled literal is evaluated after its first time.
+     */
+    public int getPoolSize() { return this.pool != null ? this.pool.size() : 0; }
+    public int getPooledLiterals() { return this.pooledLiterals; }
+    public int getSavedHeap() { return this.savedHeap; }
+    public int getSavedCycles() { return this.savedCycles; }
+
+    /**
+     * Generate the vm code of a class. It isn't written until write is called,
+     * so that it can be optimized first.
+     * @param classDeclaration the class node, which has been analysed.
+     */
+    public void generate(int classDeclaration) {
+        String className = this.ast.getString(classDeclaration);
+        int fieldCount = 0;
+
+        // Pooled literals are stored after the static variables
+        this.staticCount = staticCount(this.ast, classDeclaration);
+
+        // A constructor allocates the fields that have been declared before it
+        for (int member = this.ast.getFirstChild(classDeclaration); member != Ast.NONE; member = this.ast.getNextSibling(member)) {
+            if (this.ast.getKind(member) == Ast.Kind.FIELD) {
+                for (int name = this.ast.getFirstChild(member); name != Ast.NONE; name = this.ast.getNextSibling(name))
+                    fieldCount++;
+            } else if (this.ast.getKind(member) != Ast.Kind.STATIC)
+                generateSubroutine(className, member, fieldCount);
+        }
+    }
+
+    /**
+     * Write the vm code of every subroutine that has been generated.
+     * @throws IOException thrown if the vm writer runs into an issue writing the output code.
+     */
+    public void write() throws IOException {
+        for (VMCode subroutine : this.subroutines)
+            this.w.write(subroutine);
+    }
+
+    /**
+     * Generate the vm code of a subroutine.
+     * @param className the name of the class the subroutine is part of.
+     * @param subroutine the subroutine node.
+     * @param fieldCount the number of fields an object of the class has.
+     */
+    private void generateSubroutine(String className, int subroutine, int fieldCount) {
+        this.code = new VMCode();
+        this.subroutines.add(this.code);
+        this.code.function(className + "." + this.ast.getString(subroutine), this.ast.getExtra(subroutine));
+
+        if (this.ast.getKind(subroutine) == Ast.Kind.CONSTRUCTOR) {
+            // We need to allocate memory for the object and obtain a
+            // pointer for 'this'.
+            this.code.push(VMCode.Segment.CONSTANT, fieldCount);
+            this.code.call("Memory.alloc", 1);
+            this.code.pop(VMCode.Segment.POINTER, 0);
+        } else if (this.ast.getKind(subroutine) == Ast.Kind.METHOD) {
+            this.code.push(VMCode.Segment.ARGUMENT, 0);
+            this.code.pop(VMCode.Segment.POINTER, 0);
+        }
+
+        // The body follows the type and parameters
+        int body = this.ast.getFirstChild(subroutine);
+        while (this.ast.getKind(body) != Ast.Kind.BLOCK)
+            body = this.ast.getNextSibling(body);
+
+        generateStatements(body);
+    }
+
+    /**
+     * Generate the vm code of some statements.
+     * @param block the block node holding the statements.
+     */
+    private void generateStatements(int block) {
+        for (int statement = this.ast.getFirstChild(block); statement != Ast.NONE; statement = this.ast.getNextSibling(statement)) {
+            switch (this.ast.getKind(statement)) {
+                case LET:
+                    generateLetStatement(statement);
+                    break;
+                case IF:
+                    generateIfStatement(statement);
+                    break;
+                case WHILE:
+                    generateWhileStatement(statement);
+                    break;
+                case DO:
+                    generateSubroutineCall(this.ast.getFirstChild(statement));
+                    this.code.pop(VMCode.Segment.TEMP, 0);
+                    break;
+                case RETURN:
+                    generateReturnStatement(statement);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Generate the vm code of a let statement.
+     * @param statement the statement node.
+     */
+    private void generateLetStatement(int statement) {
+        int target = this.ast.getFirstChild(statement);
+        int value = this.ast.getNextSibling(target);
+        boolean isArrayElement = this.ast.getNextSibling(value) != Ast.NONE;
+
+        if (isArrayElement) {
+            generateExpression(value);
+            push(this.ast.getSymbol(target));
+            this.code.add(VMCode.Opcode.ADD);
+            value = this.ast.getNextSibling(value);
+        }
+
+        generateExpression(value);
+
+        if (!isArrayElement) {
+            Symbol symbol = this.ast.getSymbol(target);
+            this.code.pop(VMCode.Segment.of(symbol), symbol != null ? symbol.getIndex() : -1);
+        } else {
+            this.code.pop(VMCode.Segment.TEMP, 0);
+            this.code.pop(VMCode.Segment.POINTER, 1);
+            this.code.push(VMCode.Segment.TEMP, 0);
+            this.code.pop(VMCode.Segment.THAT, 0);
+        }
+    }
+
+    /**
+     * Generate the vm code of an if statement.
+     * @param statement the statement node.
+     */
+    private void generateIfStatement(int statement) {
+        int condition = this.ast.getFirstChild(statement);
+        int statements = this.ast.getNextSibling(condition);
+        int elseStatements = this.ast.getNextSibling(statements);
+
+        // Increment label counter to generate unique label value
+        int labelValue = this.labelCounter++;
+
+        generateExpression(condition);
+        this.code.label(VMCode.Opcode.IF_GOTO, VMCode.Label.IF_TRUE, labelValue);
+        this.code.label(VMCode.Opcode.GOTO, VMCode.Label.IF_FALSE, labelValue);
+        this.code.label(VMCode.Opcode.LABEL, VMCode.Label.IF_TRUE, labelValue);
+
+        generateStatements(statements);
+
+        if (elseStatements != Ast.NONE)
+            this.code.label(VMCode.Opcode.GOTO, VMCode.Label.IF_END, labelValue);
+        this.code.label(VMCode.Opcode.LABEL, VMCode.Label.IF_FALSE, labelValue);
+
+        if (elseStatements != Ast.NONE) {
+            generateStatements(elseStatements);
+            this.code.label(VMCode.Opcode.LABEL, VMCode.Label.IF_END, labelValue);
+        }
+    }
+
+    /**
+     * Generate the vm code of a while statement.
+     * @param statement the statement node.
+     */
+    private void generateWhileStatement(int statement) {
+        int condition = this.ast.getFirstChild(statement);
+
+        // Increment label counter to generate unique label value
+        int labelValue = this.labelCounter++;
+
+        this.code.label(VMCode.Opcode.LABEL, VMCode.Label.WHILE_EXP, labelValue);
+        generateExpression(condition);
+        this.code.add(VMCode.Opcode.NOT);
+        this.code.label(VMCode.Opcode.IF_GOTO, VMCode.Label.WHILE_END, labelValue);
+
+        generateStatements(this.ast.getNextSibling(condition));
+
+        this.code.label(VMCode.Opcode.GOTO, VMCode.Label.WHILE_EXP, labelValue);
+        this.code.label(VMCode.Opcode.LABEL, VMCode.Label.WHILE_END, labelValue);
+    }
+
+    /**
+     * Generate the vm code of a return statement.
+     * @param statement the statement node.
+     */
+    private void generateReturnStatement(int statement) {
+        if (this.ast.getFirstChild(statement) != Ast.NONE)
+            generateExpression(this.ast.getFirstChild(statement));
+
+        // Push void and return
+        if (this.ast.hasFlag(statement, Ast.VOID))
+            this.code.push(VMCode.Segment.CONSTANT, 0);
+        this.code.add(VMCode.Opcode.RETURN);
+    }
+
+    /**
+     * Generate the vm code of a subroutine call.
+     * @param call the call node.
+     */
+    private void generateSubroutineCall(int call) {
+        int name = this.ast.getFirstChild(call);
+        int argumentCount = 0;
+        int offset = 0;
+
+        if (this.ast.getSymbol(call) != null) {
+            push(this.ast.getSymbol(call));
+            offset = 1;
+        } else if (this.ast.hasFlag(call, Ast.THIS_POINTER)) {
+            this.code.push(VMCode.Segment.POINTER, 0);
+            offset = 1;
+        }
+
+        if (this.ast.hasFlag(call, Ast.PUSHED))
+            push(this.ast.getSymbol(name));
+
+        for (int argument = this.ast.getNextSibling(name); argument != Ast.NONE; argument = this.ast.getNextSibling(argument)) {
+            generateExpression(argument);
+            argumentCount++;
+        }
+
+        if (this.ast.getValue(call) != Ast.NONE)
+            this.code.call(this.ast.getString(call), argumentCount + offset);
+    }
+
+    /**
+     * Generate the vm code of an expression.
+     * The operators are walked with a stack rather than by recursing, so that long or deeply
+     * nested expressions can't overflow the call stack.
+     * @param expression the expression node.
+     */
+    private void generateExpression(int expression) {
+        int base = this.expressionCount;
+        pushExpression(expression);
+
+        // An operator is pushed back as its complement, and generated once its operands have been
+        while (this.expressionCount > base) {
+            int node = this.expressions[--this.expressionCount];
+
+            if (node < 0) {
+                node = ~node;
+                if (this.ast.getKind(node) == Ast.Kind.BINARY)
+                    generateOperator(TOKEN_KINDS[this.ast.getValue(node)]);
+                else
+                    this.code.add(this.ast.getValue(node) == Token.Kind.MINUS.ordinal() ? VMCode.Opcode.NEG : VMCode.Opcode.NOT);
+                continue;
+            }
+
+            switch (this.ast.getKind(node)) {
+                case BINARY:
+                    pushExpression(~node);
+                    pushExpression(this.ast.getNextSibling(this.ast.getFirstChild(node)));
+                    pushExpression(this.ast.getFirstChild(node));
+                    break;
+                case UNARY:
+                    pushExpression(~node);
+                    pushExpression(this.ast.getFirstChild(node));
+                    break;
+                default:
+                    generateOperand(node);
+            }
+        }
+    }
+
+    /**
+     * Push an expression that is still to be generated onto the stack.
+     * @param expression the expression node, or the complement of an operator whose operands have been pushed.
+     */
+    private void pushExpression(int expression) {
+        if (this.expressionCount == this.expressions.length)
+            this.expressions = Arrays.copyOf(this.expressions, this.expressionCount * 2);
+
+        this.expressions[this.expressionCount++] = expression;
+    }
+
+    /**
+     * Generate the vm code of an operand of an expression.
+     * @param operand the operand node.
+     */
+    private void generateOperand(int operand) {
+        int child = this.ast.getFirstChild(operand);
+
+        switch (this.ast.getKind(operand)) {
+            case INTEGER:
+                this.code.push(VMCode.Segment.CONSTANT, Integer.parseInt(this.ast.getString(operand)));
+                break;
+            case STRING:
+                if (this.pool != null)
+                    generatePooledString(this.ast.getString(operand));
+                else
+                    generateString(this.ast.getString(operand));
+                break;
+            case KEYWORD:
+                this.code.push(VMCode.Segment.CONSTANT, 0);
+                if (this.ast.getValue(operand) == Token.Kind.TRUE.ordinal())
+                    this.code.add(VMCode.Opcode.NOT);
+                break;
+            case VARIABLE:
+                if (this.ast.hasFlag(operand, Ast.PUSHED))
+                    push(this.ast.getSymbol(child));
+                else if (this.ast.hasFlag(operand, Ast.THIS_POINTER))
+                    this.code.push(VMCode.Segment.POINTER, 0);
+                break;
+            case ARRAY_ELEMENT:
+                generateExpression(this.ast.getNextSibling(child));
+
+                if (this.ast.hasFlag(operand, Ast.PUSHED)) {
+                    push(this.ast.getSymbol(child));
+                    this.code.add(VMCode.Opcode.ADD);
+                }
+
+                this.code.pop(VMCode.Segment.POINTER, 1);
+                this.code.push(VMCode.Segment.THAT, 0);
+                break;
+            default:
+                generateSubroutineCall(operand);
+        }
+    }
+
+    /**
+     * Generate the vm code that builds a new string.
+     * @param value the characters of the string.
+     */
+    private void generateString(String value) {
+        this.code.push(VMCode.Segment.CONSTANT, value.length());
+        this.code.call("String.new", 1);
+
+        for (int i = 0; i < value.length(); i++) {
+            this.code.push(VMCode.Segment.CONSTANT, value.charAt(i));
+            this.code.call("String.appendChar", 2);
+        }
+    }
+
+    /**
+     * Generate the vm code that pushes a pooled string, building it and storing it in its
+     * static variable if it hasn't been built yet. A string is never at address 0, so the
+     * static variable is only 0 until then.
+     * @param value the characters of the string.
+     */
+    private void generatePooledString(String value) {
+        Integer slot = this.pool.get(value);
+        if (slot == null) {
+            // Once the pool is full the literal is built every time it is evaluated
+            if (this.pool.size() >= this.poolSize || this.staticCount + this.pool.size() >= STATIC_WORDS) {
+                generateString(value);
+                return;
+            }
+
+            slot = this.staticCount + this.pool.size();
+            this.pool.put(value, slot);
+        }
+
+        int labelValue = this.labelCounter++;
+        this.code.push(VMCode.Segment.STATIC, slot);
+        this.code.label(VMCode.Opcode.IF_GOTO, VMCode.Label.STRING_READY, labelValue);
+        generateString(value);
+        this.code.pop(VMCode.Segment.STATIC, slot);
+        this.code.label(VMCode.Opcode.LABEL, VMCode.Label.STRING_READY, labelValue);
+        this.code.push(VMCode.Segment.STATIC, slot);
+
+        this.pooledLiterals++;
+        this.savedHeap += STRING_HEAP_WORDS + value.length();
+        this.savedCycles += STRING_NEW_CYCLES + APPEND_CHAR_CYCLES * value.length() - POOLED_CYCLES;
+    }
+
+    /**
+     * Generate the vm code of a binary operator.
+     * @param operator the operator.
+     */
+    private void generateOperator(Token.Kind operator) {
+        switch (operator) {
+            case AND:
+                this.code.add(VMCode.Opcode.AND);
+                break;
+            case OR:
+                this.code.add(VMCode.Opcode.OR);
+                break;
+            case EQUALS:
+                this.code.add(VMCode.Opcode.EQ);
+                break;
+            case LESS_THAN:
+                this.code.add(VMCode.Opcode.LT);
+                break;
+            case GREATER_THAN:
+                this.code.add(VMCode.Opcode.GT);
+                break;
+            case PLUS:
+                this.code.add(VMCode.Opcode.ADD);
+                break;
+            case MINUS:
+                this.code.add(VMCode.Opcode.SUB);
+                break;
+            case MULTIPLY:
+                this.code.call("Math.multiply", 2);
+                break;
+            default:
+                this.code.call("Math.divide", 2);
+        }
+    }
+
+    /**
+     * Generate a push of the value of a symbol from its memory segment.
+     * @param symbol the symbol, or null if it couldn't be resolved.
+     */
+    private void push(Symbol symbol) {
+        this.code.push(VMCode.Segment.of(symbol), symbol != null ? symbol.getIndex() : -1);
+    }
+}
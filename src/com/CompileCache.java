@@ -0,0 +1,287 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The compile cache stores the vm code of every file that has compiled
+ * successfully, keyed by a hash of the source code and the compiler build.
+ * The build is found by hashing the compiler's own class files, so that vm
+ * code written by any other build of the compiler is never reused. A file whose source has not changed since it was last compiled can then
+ * have its vm code copied from the cache without being compiled again.
+ *
+ * Alongside the vm code each entry records the class that was compiled, a
+ * hash of its signature and the signature of every class it depended on at
+ * the time, which is used to recompile a class when a class it uses changes.
+ * The interface skimmed from a file for the class index is cached under the
+ * same key, so an unchanged file doesn't need to be read to be indexed.
+ */
+public class CompileCache {
+    private static final String BUILD = build();    // Hash of the class files of the compiler, empty if they can't be read.
+
+    private final File directory;       // The directory that the cached vm code is stored in.
+    private final TokenCache tokens;    // The token streams of the files, stored in the tokens folder.
+
+    /**
+     * Create a cache that is stored in the directory provided.
+     * @param directory the directory to store the cache in, created if it doesn't exist.
+     * @throws IOException thrown if the directory cannot be created.
+     */
+    public CompileCache(File directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+        this.tokens = new TokenCache(new File(directory, "tokens"));
+    }
+
+    /**
+     * Get the cache of token streams kept alongside the vm code, used when a
+     * file whose source hasn't changed has to be compiled again.
+     * @return the token cache.
+     */
+    public TokenCache getTokens() { return this.tokens; }
+
+    /**
+     * Get the key that the vm code of a source file is stored under. A file that is checked against
+     * the whole program is stored separately, since it may have errors that weren't found otherwise,
+     * and optimized vm code is stored separately for each optimization level and string pool size.
+     * @param jackFile the source file.
+     * @param wholeProgram whether the file is checked against the whole program.
+     * @param optimizationLevel how much the vm code is optimized, 0 for not at all.
+     * @param poolSize the size of the string pool of the class, only used at level 2.
+     * @return the key, a hex encoded hash of the compiler version and build, the mode and the source code.
+     * @throws IOException thrown if the source file cannot be read.
+     */
+    public String key(File jackFile, boolean wholeProgram, int optimizationLevel, int poolSize) throws IOException {
+        String mode = (wholeProgram ? "\0whole-program" : "") + (optimizationLevel > 0 ? "\0-O" + optimizationLevel : "")
+                + (optimizationLevel >= 2 ? "\0pool " + poolSize : "");
+        byte[] version = (JackCompiler.VERSION + "\0" + BUILD + mode + "\0").getBytes(StandardCharsets.UTF_8);
+        return hash(version, Files.readAllBytes(jackFile.toPath()));
+    }
+
+    /**
+     * Hash the class files that the compiler was loaded from, either the jar or every
+     * class file below the class path directory.
+     * @return the hex encoded hash, or an empty string if the class files can't be read.
+     */
+    private static String build() {
+        CodeSource source = CompileCache.class.getProtectionDomain().getCodeSource();
+        if (source == null)
+            return "";
+
+        try {
+            Path location = Paths.get(source.getLocation().toURI());
+            if (!Files.isDirectory(location))
+                return hash(Files.readAllBytes(location));
+
+            // The files are hashed in a fixed order, each after its name
+            ArrayList<byte[]> data = new ArrayList<>();
+            try (Stream<Path> files = Files.walk(location)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(".class")).sorted().collect(Collectors.toList())) {
+                    data.add((location.relativize(file) + "\0").getBytes(StandardCharsets.UTF_8));
+                    data.add(Files.readAllBytes(file));
+                }
+            }
+
+            return hash(data.toArray(new byte[0][]));
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Hash the signature of a class.
+     * @param signature the signature of the class.
+     * @return the hex encoded hash.
+     */
+    public static String signatureHash(String signature) {
+        try {
+            return hash(signature.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hash the data provided using SHA-256.
+     * @param data the data to hash, in order.
+     * @return the hex encoded hash.
+     * @throws IOException thrown if SHA-256 is not supported.
+     */
+    private static String hash(byte[]... data) throws IOException {
+        MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not supported.", e);
+        }
+
+        for (byte[] d : data)
+            digest.update(d);
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest())
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    /**
+     * Find the entry stored under a key.
+     * @param key the key of the source file.
+     * @return the entry, or null if the file needs compiling.
+     * @throws IOException thrown if the entry could not be read.
+     */
+    public Entry lookup(String key) throws IOException {
+        Path dependencies = this.path(key, ".deps");
+
+        if (!Files.isRegularFile(this.path(key, ".vm")) || !Files.isRegularFile(dependencies))
+            return null;
+
+        Entry entry = new Entry(key);
+
+        for (String line : Files.readAllLines(dependencies, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+
+            if (parts[0].equals("class") && parts.length == 2)
+                entry.className = parts[1];
+            else if (parts[0].equals("signature") && parts.length == 2)
+                entry.signature = parts[1];
+            else if (parts[0].equals("depends") && parts.length == 3)
+                entry.dependencies.put(parts[1], parts[2]);
+            else
+                return null;
+        }
+
+        return entry.className != null && entry.signature != null ? entry : null;
+    }
+
+    /**
+     * Copy the cached vm code of an entry to the output file.
+     * @param entry the entry to restore.
+     * @param vmFile the file to write the vm code to.
+     * @throws IOException thrown if the vm code could not be copied.
+     */
+    public void restore(Entry entry, File vmFile) throws IOException {
+        Files.copy(this.path(entry.key, ".vm"), vmFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Store the vm code of a file that has just been compiled.
+     * @param key the key of the source file.
+     * @param vmFile the file that the vm code was written to.
+     * @throws IOException thrown if the vm code could not be stored.
+     */
+    public void store(String key, File vmFile) throws IOException {
+        this.write(key, ".vm", Files.readAllBytes(vmFile.toPath()));
+    }
+
+    /**
+     * Store the class of a file that has just been compiled along with the
+     * signatures of the classes it depends on. An entry is only used once
+     * this has been stored.
+     * @param key the key of the source file.
+     * @param className the name of the class in the file.
+     * @param signature hash of the signature of the class.
+     * @param dependencies the signature hash of each class it depends on, "-" if unknown.
+     * @throws IOException thrown if the dependencies could not be stored.
+     */
+    public void storeDependencies(String key, String className, String signature, Map<String, String> dependencies) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("class ").append(className).append("\n");
+        text.append("signature ").append(signature).append("\n");
+
+        for (Map.Entry<String, String> dependency : dependencies.entrySet())
+            text.append("depends ").append(dependency.getKey()).append(" ").append(dependency.getValue()).append("\n");
+
+        this.write(key, ".deps", text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Find the cached interface of a file, which is stored apart from its vm code
+     * since the interface is found whether or not the file is compiled.
+     * @param key the key of the source file.
+     * @return the signature of the class in the file, or null if it isn't cached.
+     * @throws IOException thrown if the interface could not be read.
+     */
+    public String lookupInterface(String key) throws IOException {
+        Path path = this.path(key, ".interface");
+        return Files.isRegularFile(path) ? new String(Files.readAllBytes(path), StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Store the interface of a file that has just been skimmed.
+     * @param key the key of the source file.
+     * @param signature the signature of the class in the file.
+     * @throws IOException thrown if the interface could not be stored.
+     */
+    public void storeInterface(String key, String signature) throws IOException {
+        this.write(key, ".interface", signature.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write part of an entry. The data is written to a temporary file first so
+     * that another compiler reading the cache never sees half of an entry.
+     * @param key the key of the source file.
+     * @param extension the part of the entry being written.
+     * @param data the data to write.
+     * @throws IOException thrown if the data could not be written.
+     */
+    private void write(String key, String extension, byte[] data) throws IOException {
+        Path temp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+
+        try {
+            Files.write(temp, data);
+            Files.move(temp, this.path(key, extension), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Get the path of part of the cache entry for a key.
+     * @param key the key of the source file.
+     * @param extension the part of the entry.
+     * @return the path that the part is stored at.
+     */
+    private Path path(String key, String extension) {
+        return this.directory.toPath().resolve(key + extension);
+    }
+
+    /**
+     * An entry in the cache, describing the class that was compiled.
+     */
+    public static class Entry {
+        private final String key;                           // The key of the source file.
+        private String className;                           // The name of the class in the file.
+        private String signature;                           // Hash of the signature of the class.
+        private final Map<String, String> dependencies;     // Signature hash of each class depended on.
+
+        Entry(String key) {
+            this.key = key;
+            this.dependencies = new LinkedHashMap<>();
+        }
+
+        /**
+         * Getters.
+         */
+        public String getKey() { return this.key; }
+        public String getClassName() { return this.className; }
+        public String getSignature() { return this.signature; }
+        public Map<String, String> getDependencies() { return this.dependencies; }
+    }
+}
@@ -0,0 +1,303 @@
+package com;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The compile daemon keeps the compiler running in a single JVM so that the
+ * cost of starting the JVM, loading classes and warming up the JIT is only
+ * paid once. Requests are sent to a port on the loopback address by a client,
+ * which receives the messages of the compilation and its exit status back.
+ *
+ * Since any local user can connect to the port, the daemon only serves
+ * requests from users who can read its token: random bytes written to a file
+ * in the home directory of the user running the daemon, which only that user
+ * can read. The file is deleted when the daemon stops.
+ *
+ * A request is the token, the working directory of the client and then the
+ * command line arguments. The response is a sequence of frames, each a tag byte
+ * followed by data: 'O' and 'E' carry text written to the out and err
+ * streams, and 'X' carries the exit status and ends the response.
+ */
+public class CompileDaemon {
+    private static final byte OUT = 'O';                // Frame holding text for the out stream.
+    private static final byte ERR = 'E';                // Frame holding text for the err stream.
+    private static final byte EXIT = 'X';               // Frame holding the exit status.
+    private static final String STOP = "--stop";        // Request that stops the daemon.
+    private static final String WATCH = "--watch";      // Option that the daemon cannot serve.
+    private static final String TOKEN_DIRECTORY = ".jack-compiler"; // Folder in the home directory that holds the tokens.
+    private static final int TOKEN_LENGTH = 32;         // The number of random bytes in a token.
+
+    private final int port;                             // The port that requests are accepted on.
+    private final ExecutorService workers;              // Threads that handle the requests.
+    private ServerSocket server;                        // The socket that requests are accepted on.
+    private volatile boolean running;                   // Whether the daemon is still accepting requests.
+    private byte[] token;                               // The token that every request must start with.
+
+    /**
+     * Create a daemon that accepts requests on the port provided.
+     * @param port the port to listen on, 0 to choose any free port.
+     */
+    public CompileDaemon(int port) {
+        this.port = port;
+        this.workers = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Accept and handle requests until a stop request is received.
+     * @throws IOException thrown if the port cannot be listened on.
+     */
+    public void serve() throws IOException {
+        this.server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+        this.token = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(this.token);
+
+        Path tokenFile;
+        try {
+            tokenFile = writeToken(this.server.getLocalPort(), this.token);
+        } catch (IOException e) {
+            this.server.close();
+            throw new IOException("Unable to write the token of the daemon: " + e.getMessage(), e);
+        }
+
+        this.running = true;
+        System.out.println("[Daemon] Listening on port " + this.server.getLocalPort());
+
+        try {
+            while (this.running) {
+                Socket socket;
+
+                try {
+                    socket = this.server.accept();
+                } catch (SocketException e) {
+                    // The socket is closed by a stop request
+                    if (!this.running)
+                        break;
+                    throw e;
+                }
+
+                this.workers.submit(() -> this.handle(socket));
+            }
+        } finally {
+            this.workers.shutdown();
+            this.server.close();
+            Files.deleteIfExists(tokenFile);
+        }
+    }
+
+    /**
+     * Get the file that the token of the daemon listening on a port is stored in.
+     * @param port the port of the daemon.
+     * @return the path of the token file.
+     */
+    private static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), TOKEN_DIRECTORY, "daemon-" + port + ".token");
+    }
+
+    /**
+     * Store the token of a daemon in a file that only the current user can read.
+     * The token is written to a temporary file first, so that it is never readable by others.
+     * @param port the port of the daemon.
+     * @param token the token.
+     * @return the path of the token file.
+     * @throws IOException thrown if the token could not be stored.
+     */
+    private static Path writeToken(int port, byte[] token) throws IOException {
+        Path file = tokenFile(port);
+        Files.createDirectories(file.getParent());
+        restrict(file.getParent(), "rwx------");
+
+        Path temp = Files.createTempFile(file.getParent(), "daemon", ".tmp");
+        try {
+            restrict(temp, "rw-------");
+            Files.write(temp, token);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        return file;
+    }
+
+    /**
+     * Limit who can access a file or directory.
+     * @param path the file or directory.
+     * @param permissions the permissions, such as "rw-------".
+     * @throws IOException thrown if the permissions could not be set.
+     */
+    private static void restrict(Path path, String permissions) throws IOException {
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(permissions));
+        } catch (UnsupportedOperationException e) {
+            // The file system has no POSIX permissions, and the home directory is private to its user
+        }
+    }
+
+    /**
+     * Stop accepting requests, letting the requests already accepted finish.
+     */
+    private void stop() {
+        this.running = false;
+
+        try {
+            this.server.close();
+        } catch (IOException e) {
+            System.err.println("[Daemon] Unable to close the socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Handle a single request, running the compiler with the arguments received.
+     * @param socket the connection to the client.
+     */
+    private void handle(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            PrintStream out = new PrintStream(new FrameStream(data, OUT), true, StandardCharsets.UTF_8);
+            PrintStream err = new PrintStream(new FrameStream(data, ERR), true, StandardCharsets.UTF_8);
+            int status;
+
+            // Nothing else is read from a client that doesn't have the token
+            byte[] token = new byte[TOKEN_LENGTH];
+            in.readFully(token);
+            if (!MessageDigest.isEqual(token, this.token)) {
+                err.println("[Daemon] The request was refused, as it didn't carry the token of the daemon.");
+                synchronized (data) {
+                    data.writeByte(EXIT);
+                    data.writeInt(1);
+                    data.flush();
+                }
+                return;
+            }
+
+            File workingDirectory = new File(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++)
+                args[i] = in.readUTF();
+
+            if (args.length == 1 && args[0].equals(STOP)) {
+                out.println("[Daemon] Stopping");
+                this.stop();
+                status = 0;
+            } else if (Arrays.asList(args).contains(WATCH)) {
+                // Watching never returns, so the client would wait for its exit status forever
+                err.println("The --watch option cannot be sent to the daemon, run the compiler directly instead.");
+                status = 1;
+            } else {
+                status = JackCompiler.run(args, workingDirectory, out, err);
+            }
+
+            out.flush();
+            err.flush();
+
+            synchronized (data) {
+                data.writeByte(EXIT);
+                data.writeInt(status);
+                data.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("[Daemon] Request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Send a request to a running daemon, printing the messages that are sent back.
+     * The token of the daemon is read from its file, so only the user running the
+     * daemon can send it requests.
+     * @param port the port that the daemon is listening on.
+     * @param args the command line arguments to send, or --stop to stop the daemon.
+     * @return the exit status of the request.
+     * @throws IOException thrown if the daemon cannot be reached or its token cannot be read.
+     */
+    public static int request(int port, String[] args) throws IOException {
+        byte[] token;
+        try {
+            token = Files.readAllBytes(tokenFile(port));
+        } catch (IOException e) {
+            throw new IOException("Unable to read the token of a daemon on port " + port
+                    + ", it may not be running: " + e.getMessage(), e);
+        }
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+            data.write(token);
+            data.writeUTF(new File("").getAbsolutePath());
+            data.writeInt(args.length);
+            for (String arg : args)
+                data.writeUTF(arg);
+            data.flush();
+
+            while (true) {
+                byte tag = in.readByte();
+
+                if (tag == EXIT)
+                    return in.readInt();
+
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+
+                PrintStream stream = tag == ERR ? System.err : System.out;
+                stream.write(text, 0, text.length);
+                stream.flush();
+            }
+        }
+    }
+
+    /**
+     * Output stream that sends everything written to it to the client as frames with the same tag.
+     */
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream data;
+        private final byte tag;
+
+        FrameStream(DataOutputStream data, byte tag) {
+            this.data = data;
+            this.tag = tag;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (this.data) {
+                this.data.writeByte(this.tag);
+                this.data.writeInt(len);
+                this.data.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (this.data) {
+                this.data.flush();
+            }
+        }
+    }
+}
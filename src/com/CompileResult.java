@@ -0,0 +1,67 @@
+package com;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * A compile result records how the compilation of a single file ended so
+ * that a whole batch of files can be compiled before the errors are reported.
+ */
+public class CompileResult {
+
+    // The possible ways that the compilation of a file can end
+    public enum Status {
+        SUCCESS,
+        SEMANTIC_ERROR,
+        PARSER_ERROR,
+        TOKENIZER_ERROR,
+        IO_ERROR
+    }
+
+    private final File file;                // The file that was compiled.
+    private final Status status;            // How the compilation ended.
+    private final String className;         // The name of the class in the file, null if unknown.
+    private final String signature;         // Hash of the interface of the class, null if unknown.
+    private final Set<String> dependencies; // The names of the other classes that the class refers to.
+
+    /**
+     * Create a new compile result for a file whose class is unknown.
+     * @param file the file that was compiled.
+     * @param status how the compilation ended.
+     */
+    public CompileResult(File file, Status status) {
+        this(file, status, null, null, Collections.emptySet());
+    }
+
+    /**
+     * Create a new compile result.
+     * @param file the file that was compiled.
+     * @param status how the compilation ended.
+     * @param className the name of the class in the file.
+     * @param signature hash of the interface of the class.
+     * @param dependencies the names of the other classes that the class refers to.
+     */
+    public CompileResult(File file, Status status, String className, String signature, Set<String> dependencies) {
+        this.file = file;
+        this.status = status;
+        this.className = className;
+        this.signature = signature;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Getters.
+     */
+    public File getFile() { return this.file; }
+    public Status getStatus() { return this.status; }
+    public boolean isSuccess() { return this.status == Status.SUCCESS; }
+    public String getClassName() { return this.className; }
+    public String getSignature() { return this.signature; }
+    public Set<String> getDependencies() { return this.dependencies; }
+
+    @Override
+    public String toString() {
+        return "<CompileResult " + file.getPath() + ", " + status + ">";
+    }
+}
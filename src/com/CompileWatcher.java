@@ -0,0 +1,267 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The compile watcher keeps watching a directory after it has been compiled
+ * and recompiles each '.jack' file that is created or changed. Events are
+ * collected until the directory has been quiet for a short time, so a file
+ * that is saved several times in quick succession, or changes again while it
+ * is being compiled, is only compiled once more.
+ *
+ * When the signature of a changed class is different, the classes that use
+ * it are compiled again as well, so that their vm code and diagnostics are
+ * up to date. When the whole program is checked, every file is compiled
+ * again instead, since the class index needs every class.
+ */
+public class CompileWatcher {
+    private static final long QUIET_MILLIS = 100;           // How long to wait for more events before compiling.
+
+    private final File directory;                           // The directory being watched.
+    private final File only;                                // The only file to compile, null for every file.
+    private final boolean recursive;                        // Whether to watch the folders below the directory.
+    private final int jobs;                                 // The number of files that can be compiled at once.
+    private final CompileCache cache;                       // Cache of previously compiled files, null if not used.
+    private final boolean wholeProgram;                     // Whether the references to other classes are checked against every class.
+    private final int optimizationLevel;                    // How much the vm code of each file is optimized, 0 for not at all.
+    private final PrintStream out;                          // Stream that progress messages are written to.
+    private final PrintStream err;                          // Stream that errors and warnings are written to.
+
+    private final HashMap<WatchKey, Path> directories;      // The directory that each watch key belongs to.
+    private final HashMap<Path, CompileResult> results;     // The latest result of compiling each file, by absolute path.
+
+    /**
+     * Create a watcher for a file or directory.
+     * @param file the file or directory to watch.
+     * @param recursive whether to watch the folders below the directory.
+     * @param jobs the number of files that can be compiled at once.
+     * @param cache the cache used to skip files that haven't changed, or null to compile every file.
+     * @param wholeProgram whether to check the references to other classes against every class being watched.
+     * @param optimizationLevel 0 to write the vm code as generated, 1 to run the peephole optimizer over it, 2 to also pool string literals.
+     * @param out the stream that progress messages are written to.
+     * @param err the stream that errors and warnings are written to.
+     */
+    public CompileWatcher(File file, boolean recursive, int jobs, CompileCache cache, boolean wholeProgram, int optimizationLevel,
+                          PrintStream out, PrintStream err) {
+        this.directory = file.isDirectory() ? file : file.getAbsoluteFile().getParentFile();
+        this.only = file.isDirectory() ? null : file.getAbsoluteFile();
+        this.recursive = recursive && file.isDirectory();
+        this.jobs = jobs;
+        this.cache = cache;
+        this.wholeProgram = wholeProgram;
+        this.optimizationLevel = optimizationLevel;
+        this.out = out;
+        this.err = err;
+        this.directories = new HashMap<>();
+        this.results = new HashMap<>();
+    }
+
+    /**
+     * Watch for changes, compiling the files that change, until the thread is interrupted.
+     * @param compiled the results of the compilation that the watcher follows on from.
+     * @throws IOException thrown if the directory cannot be watched.
+     */
+    public void watch(ArrayList<CompileResult> compiled) throws IOException {
+        for (CompileResult result : compiled)
+            this.results.put(result.getFile().toPath().toAbsolutePath().normalize(), result);
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            this.register(watcher, this.directory.toPath(), null);
+            this.out.println("[Watching] " + this.directory.getPath());
+
+            while (true) {
+                TreeSet<Path> changed = new TreeSet<>();
+                WatchKey key = watcher.take();
+
+                // Keep collecting until no events have arrived for a while
+                do {
+                    this.collect(watcher, key, changed);
+                } while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+
+                this.compile(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Compile the files that have changed, followed by the files that use a class whose signature changed.
+     * @param changed the files that have changed.
+     */
+    private void compile(TreeSet<Path> changed) {
+        if (changed.isEmpty())
+            return;
+
+        // Every class has to be in the index when the whole program is checked, and every
+        // class shares the static variables when string literals are pooled
+        TreeSet<Path> files = this.wholeProgram || this.optimizationLevel >= 2 ? this.findSources() : changed;
+        HashSet<Path> compiled = new HashSet<>();
+
+        while (!files.isEmpty()) {
+            BatchCompiler compiler = new BatchCompiler(this.jobs, this.cache, this.wholeProgram, this.optimizationLevel, this.out, this.err);
+            for (Path path : files)
+                compiler.submit(path.toFile());
+
+            ArrayList<CompileResult> results = compiler.finish();
+            if (results.size() > 1)
+                compiler.printSummary(results);
+
+            files = this.findDependents(results, compiled);
+        }
+    }
+
+    /**
+     * Record the results of a batch, and find the files that haven't been compiled yet
+     * which use a class whose signature has changed.
+     * @param batch the results of the batch.
+     * @param compiled the files compiled since the last change, which the batch is added to.
+     * @return the files that need compiling again.
+     */
+    private TreeSet<Path> findDependents(ArrayList<CompileResult> batch, HashSet<Path> compiled) {
+        HashSet<String> changedClasses = new HashSet<>();
+
+        for (CompileResult result : batch) {
+            Path path = result.getFile().toPath().toAbsolutePath().normalize();
+            CompileResult previous = this.results.put(path, result);
+            compiled.add(path);
+
+            if (result.getClassName() != null && (previous == null || !result.getSignature().equals(previous.getSignature())))
+                changedClasses.add(result.getClassName());
+        }
+
+        TreeSet<Path> dependents = new TreeSet<>();
+        for (Map.Entry<Path, CompileResult> entry : this.results.entrySet()) {
+            if (compiled.contains(entry.getKey()) || !this.isSource(entry.getKey()))
+                continue;
+
+            for (String dependency : entry.getValue().getDependencies()) {
+                if (changedClasses.contains(dependency))
+                    dependents.add(entry.getKey());
+            }
+        }
+
+        return dependents;
+    }
+
+    /**
+     * Find every '.jack' file that is being watched.
+     * @return the files.
+     */
+    private TreeSet<Path> findSources() {
+        TreeSet<Path> sources = new TreeSet<>();
+
+        for (Path directory : this.directories.values()) {
+            try {
+                this.addFiles(directory, sources);
+            } catch (IOException e) {
+                // The directory has been deleted, and its key is dropped once its events are read
+            }
+        }
+
+        return sources;
+    }
+
+    /**
+     * Add the '.jack' files that an event refers to into the set of changed files.
+     * @param watcher the watch service.
+     * @param key the key that has events waiting.
+     * @param changed the files that have changed so far.
+     * @throws IOException thrown if a new directory cannot be watched.
+     */
+    private void collect(WatchService watcher, WatchKey key, TreeSet<Path> changed) throws IOException {
+        Path directory = this.directories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Events have been lost so every file could have changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                this.addFiles(directory, changed);
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+
+            if (this.recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS))
+                this.register(watcher, path, changed);
+            else if (event.kind() != StandardWatchEventKinds.ENTRY_DELETE && this.isSource(path))
+                changed.add(path);
+        }
+
+        if (!key.reset())
+            this.directories.remove(key);
+    }
+
+    /**
+     * Watch a directory, and the folders below it if recursive. Any '.jack' files already
+     * inside a directory found this way are added to the changed files, since they could
+     * have been created before the directory was being watched.
+     * @param watcher the watch service.
+     * @param directory the directory to watch.
+     * @param changed the files that have changed so far, null if the files don't need compiling.
+     * @throws IOException thrown if the directory cannot be watched.
+     */
+    private void register(WatchService watcher, Path directory, TreeSet<Path> changed) throws IOException {
+        WatchKey key = directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.directories.put(key, directory);
+
+        if (changed != null)
+            this.addFiles(directory, changed);
+
+        if (this.recursive) {
+            try (Stream<Path> children = Files.list(directory)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    // Links to directories are not followed, as when the files are first compiled
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+                        this.register(watcher, child, changed);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add every '.jack' file directly inside a directory into the set of changed files.
+     * @param directory the directory.
+     * @param changed the files that have changed so far.
+     * @throws IOException thrown if the directory cannot be listed.
+     */
+    private void addFiles(Path directory, TreeSet<Path> changed) throws IOException {
+        try (Stream<Path> children = Files.list(directory)) {
+            for (Path child : (Iterable<Path>) children::iterator) {
+                if (this.isSource(child))
+                    changed.add(child);
+            }
+        }
+    }
+
+    /**
+     * Check whether a path is a '.jack' file that should be compiled.
+     * @param path the path.
+     * @return true if the file should be compiled.
+     */
+    private boolean isSource(Path path) {
+        if (this.only != null)
+            return path.toAbsolutePath().equals(this.only.toPath()) && Files.isRegularFile(path);
+
+        return path.getFileName().toString().endsWith(".jack") && Files.isRegularFile(path);
+    }
+}
@@ -0,0 +1,91 @@
+package com;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * The console buffer holds everything written to its out and err streams, in
+ * the order it was written, so that the messages for a single file can be
+ * printed to the real console later on without being mixed up with the
+ * messages of files compiled at the same time.
+ */
+public class ConsoleBuffer {
+    private final ArrayList<Chunk> chunks;      // The text that has been written, in order.
+    private final PrintStream out;              // Stream that stands in for System.out.
+    private final PrintStream err;              // Stream that stands in for System.err.
+
+    /**
+     * Create a new empty console buffer.
+     */
+    public ConsoleBuffer() {
+        this.chunks = new ArrayList<>();
+        this.out = new PrintStream(new ChunkStream(false), true, StandardCharsets.UTF_8);
+        this.err = new PrintStream(new ChunkStream(true), true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Getters.
+     */
+    public PrintStream getOut() { return this.out; }
+    public PrintStream getErr() { return this.err; }
+
+    /**
+     * Write everything that has been buffered to the streams provided, keeping
+     * the original order of the messages.
+     * @param out the stream that progress messages are written to.
+     * @param err the stream that errors and warnings are written to.
+     */
+    public void replay(PrintStream out, PrintStream err) {
+        this.out.flush();
+        this.err.flush();
+
+        synchronized (this.chunks) {
+            for (Chunk chunk : this.chunks) {
+                PrintStream stream = chunk.isError ? err : out;
+                stream.write(chunk.bytes, 0, chunk.bytes.length);
+                stream.flush();
+            }
+        }
+    }
+
+    /**
+     * A piece of text written to one of the two streams.
+     */
+    private static class Chunk {
+        private final boolean isError;
+        private final byte[] bytes;
+
+        Chunk(boolean isError, byte[] bytes) {
+            this.isError = isError;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Output stream that stores each write as a chunk in the shared list.
+     */
+    private class ChunkStream extends OutputStream {
+        private final boolean isError;
+
+        ChunkStream(boolean isError) {
+            this.isError = isError;
+        }
+
+        @Override
+        public void write(int b) {
+            this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            byte[] copy = new byte[len];
+            System.arraycopy(b, off, copy, 0, len);
+
+            synchronized (chunks) {
+                chunks.add(new Chunk(this.isError, copy));
+            }
+        }
+    }
+}
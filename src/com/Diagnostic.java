@@ -0,0 +1,55 @@
+package com;
+
+/**
+ * A diagnostic is an error or warning found while compiling a source file,
+ * kept so that it can be inspected rather than only printed to the console.
+ */
+public class Diagnostic {
+
+    // How serious the diagnostic is, an error stops the vm code being output
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    // The stage of the compiler that found the diagnostic
+    public enum Stage {
+        TOKENIZER,
+        PARSER,
+        SEMANTIC,
+        IO
+    }
+
+    private final Severity severity;    // How serious the diagnostic is.
+    private final Stage stage;          // The stage of the compiler that found it.
+    private final int lineNumber;       // The line number it was found at, -1 if unknown.
+    private final String message;       // The message describing the diagnostic.
+
+    /**
+     * Create a new diagnostic.
+     * @param severity how serious the diagnostic is.
+     * @param stage the stage of the compiler that found it.
+     * @param lineNumber the line number it was found at, -1 if unknown.
+     * @param message the message describing the diagnostic.
+     */
+    public Diagnostic(Severity severity, Stage stage, int lineNumber, String message) {
+        this.severity = severity;
+        this.stage = stage;
+        this.lineNumber = lineNumber;
+        this.message = message;
+    }
+
+    /**
+     * Getters.
+     */
+    public Severity getSeverity() { return this.severity; }
+    public Stage getStage() { return this.stage; }
+    public int getLineNumber() { return this.lineNumber; }
+    public String getMessage() { return this.message; }
+    public boolean isError() { return this.severity == Severity.ERROR; }
+
+    @Override
+    public String toString() {
+        return "<Diagnostic " + severity + ", " + stage + ", " + lineNumber + ", " + message + ">";
+    }
+}
@@ -0,0 +1,95 @@
+package com;
+
+import java.util.LinkedList;
+
+/**
+ * The identifier class is used to handle the various types of identifiers
+ * that are allowed in the jack language. It stores information about the
+ * identifier and allows for quick access to the data stored in the symbol table
+ * about it.
+ */
+class Identifier {
+    private Symbol cId;
+    private Symbol id;
+    private String cIdName;
+    private String idName;
+    private int lineNumber;
+    private LinkedList<String> arguments;
+
+    /**
+     * Create an identifier that isn't yet declared in the symbol table.
+     *
+     * @param cIdName the name of the class level identifier.
+     * @param idName the name of the identifier.
+     * @param lineNumber the line number the identifier is located at.
+     */
+    public Identifier(String cIdName, String idName, int lineNumber) {
+        this(cIdName, null, idName, null, lineNumber);
+    }
+
+    /**
+     * Create an identifier that has been declared, fully.
+     *
+     * @param cId the class identifier symbol.
+     * @param id the identifier symbol.
+     * @param lineNumber the line number that the identifier is located at.
+     */
+    public Identifier(Symbol cId, Symbol id, int lineNumber) {
+        this(cId.getName(), cId, id.getName(), id, lineNumber);
+    }
+
+    /**
+     * Create an identifier.
+     *
+     * @param cIdName the name of the class level identifier.
+     * @param cId the class identifier symbol.
+     * @param idName the name of the identifier.
+     * @param id the identifier symbol.
+     * @param lineNumber the line number the identifier is located at.
+     */
+    public Identifier(String cIdName, Symbol cId, String idName, Symbol id, int lineNumber) {
+        this.cIdName = cIdName;
+        this.cId = cId;
+        this.idName = idName;
+        this.id = id;
+        this.lineNumber = lineNumber;
+    }
+
+    /*
+     * Getters
+     */
+    public String getCIdName() { return this.cIdName; }
+    public String getIdName() { return this.idName; }
+    public int getLineNumber() { return this.lineNumber; }
+    public Symbol getId() { return this.id; }
+    public Symbol getCId() { return this.cId; }
+    public LinkedList<String> getArguments() { return this.arguments; }
+
+    // these getters allow quick access of data i.e. rather than typing identifier.getId().getKind() -> identifier.getKind()
+    public Symbol.Kind getKind() { return this.id != null ? this.id.getKind() : null; }
+    public int getIndex() { return this.id != null ? this.id.getIndex() : -1; }
+    public String getType() { return this.id != null ? this.id.getType() : ""; }
+
+    /*
+     * Setters
+     */
+    public void setArguments(LinkedList<String> args) {
+        this.arguments = args;
+    }
+    public void setId(Symbol symbol) {
+        this.id = symbol;
+    }
+    public void setInitialized(boolean initialized) { this.id.setInitialized(initialized); }
+
+    /**
+     * Return the name of the identifier.
+     * @return name of the identifier.
+     */
+    @Override
+    public String toString() {
+        if (this.cIdName == null || this.cIdName.equals(""))
+            return this.idName;
+        else
+            return this.cIdName + "." + this.idName;
+    }
+}
@@ -0,0 +1,102 @@
+package com;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The in memory compiler compiles jack source code that is held in memory,
+ * returning the vm code and the diagnostics that were found without reading
+ * or writing any files or printing anything to the console. This allows the
+ * compiler to be embedded in other programs.
+ */
+public class InMemoryCompiler {
+
+    /**
+     * Compile jack source code.
+     * @param source the source code.
+     * @return the result of the compilation.
+     */
+    public static Result compile(CharSequence source) {
+        return compile(new StringReader(source.toString()));
+    }
+
+    /**
+     * Compile jack source code that is encoded as UTF-8.
+     * @param source the source code.
+     * @return the result of the compilation.
+     */
+    public static Result compile(byte[] source) {
+        return compile(new String(source, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Compile jack source code read from a reader.
+     * @param source the reader that the source code is read from.
+     * @return the result of the compilation.
+     */
+    public static Result compile(Reader source) {
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        StringWriter vmCode = new StringWriter();
+        ArrayList<Diagnostic> diagnostics = new ArrayList<>();
+        CompilationEngine compilationEngine;
+
+        try {
+            compilationEngine = new CompilationEngine("", source, vmCode, discard, discard);
+        } catch (IOException e) {
+            diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.IO, -1, e.getMessage()));
+            return new Result(null, null, diagnostics);
+        }
+
+        try {
+            compilationEngine.run();
+        } catch (ParserException e) {
+            diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.PARSER, e.getLineNumber(), e.getMessage()));
+        } catch (TokenizerException e) {
+            diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.TOKENIZER, e.getLineNumber(), e.getMessage()));
+        } catch (IOException e) {
+            diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.IO, -1, e.getMessage()));
+        }
+
+        // Syntax and semantic diagnostics were found before any error that stopped the compilation
+        diagnostics.addAll(0, compilationEngine.getDiagnostics());
+
+        boolean success = true;
+        for (Diagnostic diagnostic : diagnostics) {
+            if (diagnostic.isError())
+                success = false;
+        }
+
+        return new Result(compilationEngine.getClassName(), success ? vmCode.toString() : null, diagnostics);
+    }
+
+    /**
+     * The result of compiling source code in memory.
+     */
+    public static class Result {
+        private final String className;                 // The name of the class compiled, null if it wasn't found.
+        private final String vmCode;                    // The vm code, null if the compilation failed.
+        private final List<Diagnostic> diagnostics;     // The errors and warnings found, in order.
+
+        Result(String className, String vmCode, List<Diagnostic> diagnostics) {
+            this.className = className;
+            this.vmCode = vmCode;
+            this.diagnostics = Collections.unmodifiableList(diagnostics);
+        }
+
+        /**
+         * Getters.
+         */
+        public String getClassName() { return this.className; }
+        public String getVMCode() { return this.vmCode; }
+        public List<Diagnostic> getDiagnostics() { return this.diagnostics; }
+        public boolean isSuccess() { return this.vmCode != null; }
+    }
+}
@@ -2,78 +2,246 @@ package com;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class JackCompiler {
+    public static final String VERSION = "1.2";            // Compiler version, part of the key of cached vm code along with the build.
+    public static final int MAX_OPTIMIZATION_LEVEL = 2;     // The highest level accepted by the -O option.
+
     /**
      * Accept a single file path as an argument and compile either the file
      * provided or the files within the directory that end in '.jack'. The
      * file, once compiled, will be output as a '.vm' file which can then be
      * used to run compiled jack programs.
      *
+     * Usage: JackCompiler [-j N] [-r] [-O1|-O2] [--cache dir] [--whole-program] [--watch] file/directory
+     * -j N compiles up to N files at the same time.
+     * -r also compiles the files in every folder below the directory.
+     * -O1 runs the peephole optimizer over the vm code, reporting how many instructions it removed. -O0 turns it off.
+     * -O2 also builds each string literal once, keeping it in a static variable.
+     * --cache dir reuses the vm code of files that haven't changed since they were cached in dir.
+     * --whole-program checks the subroutines that each class uses from the other classes being compiled.
+     * --watch keeps running after compiling, recompiling each file when it changes.
+     *
+     * Usage: JackCompiler --daemon port
+     * Keep the compiler running, compiling the requests that the same user sends to the port.
+     *
+     * Usage: JackCompiler --client port [options] file/directory
+     * Send the compilation to a compiler that is running as a daemon.
+     *
      * @param args a file path to compile.
      */
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Please provide a single file path argument.");
-            System.exit(1);
+        if (args.length > 0 && (args[0].equals("--daemon") || args[0].equals("--client"))) {
+            int port = args.length > 1 ? parsePort(args[1]) : -1;
+
+            if (port < 0) {
+                System.err.println("The " + args[0] + " option expects a port number.");
+                System.exit(1);
+            }
+
+            try {
+                if (args[0].equals("--daemon"))
+                    new CompileDaemon(port).serve();
+                else
+                    System.exit(CompileDaemon.request(port, Arrays.copyOfRange(args, 2, args.length)));
+            } catch (IOException e) {
+                System.err.println(CommandLineText.ANSI_RED + "[IO Error] " + e.getMessage() + CommandLineText.ANSI_RESET);
+                System.exit(1);
+            }
+            return;
         }
 
-        File file = new File(args[0]);
+        System.exit(run(args, null, System.out, System.err));
+    }
+
+    /**
+     * Run the compiler with the arguments provided, as described in main.
+     *
+     * @param args the command line arguments.
+     * @param workingDirectory the directory that relative paths are resolved against, null for the current directory.
+     * @param out the stream that progress messages are written to.
+     * @param err the stream that errors are written to.
+     * @return the exit status, 0 if every file compiled.
+     */
+    public static int run(String[] args, File workingDirectory, PrintStream out, PrintStream err) {
+        String path = null;
+        int jobs = 1;
+        boolean recursive = false;
+        String cacheDirectory = null;
+        boolean watch = false;
+        boolean wholeProgram = false;
+        int optimizationLevel = 0;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-j")) {
+                String value = args[i].length() > 2 ? args[i].substring(2) : (i + 1 < args.length ? args[++i] : "");
+                try {
+                    jobs = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    jobs = 0;
+                }
+
+                if (jobs < 1) {
+                    err.println("The -j option expects a positive number of jobs.");
+                    return 1;
+                }
+            } else if (args[i].startsWith("-O")) {
+                try {
+                    optimizationLevel = Integer.parseInt(args[i].substring(2));
+                } catch (NumberFormatException e) {
+                    optimizationLevel = -1;
+                }
+
+                if (optimizationLevel < 0 || optimizationLevel > MAX_OPTIMIZATION_LEVEL) {
+                    err.println("The -O option expects a level from 0 to " + MAX_OPTIMIZATION_LEVEL + ".");
+                    return 1;
+                }
+            } else if (args[i].equals("-r")) {
+                recursive = true;
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--whole-program")) {
+                wholeProgram = true;
+            } else if (args[i].equals("--cache")) {
+                if (i + 1 >= args.length) {
+                    err.println("The --cache option expects a directory.");
+                    return 1;
+                }
+                cacheDirectory = args[++i];
+            } else if (path == null) {
+                path = args[i];
+            } else {
+                path = null;
+                break;
+            }
+        }
+
+        if (path == null) {
+            err.println("Please provide a single file path argument.");
+            return 1;
+        }
+
+        File file = resolve(workingDirectory, path);
 
         if (!file.exists()) {
-            System.err.println("The file doesn't exist.");
-            System.exit(1);
+            err.println("The file doesn't exist.");
+            return 1;
         }
 
-        // we need to compile every file in the directory
-        if (file.isDirectory()) {
-            for (File f : file.listFiles()) {
-                if (f.isFile() && f.getName().endsWith(".jack"))
-                    compile(f);
+        if (file.isFile() && !file.getName().endsWith(".jack")) {
+            err.println("Please provide a file name ending with .jack");
+            return 1;
+        }
+
+        CompileCache cache = null;
+        if (cacheDirectory != null) {
+            try {
+                cache = new CompileCache(resolve(workingDirectory, cacheDirectory));
+            } catch (IOException e) {
+                err.println(CommandLineText.ANSI_RED + "[IO Error] Unable to create the cache directory "
+                        + cacheDirectory + CommandLineText.ANSI_RESET);
+                return 1;
             }
+        }
+
+        BatchCompiler compiler = new BatchCompiler(jobs, cache, wholeProgram, optimizationLevel, out, err);
+        boolean listed = true;
+
+        // we need to compile every file in the directory
+        if (file.isDirectory())
+            listed = submitDirectory(compiler, file, recursive, err);
         // we only compile the single file
-        } else if (file.isFile()) {
-            if (!file.getName().endsWith(".jack"))  {
-                System.err.println("Please provide a file name ending with .jack");
-                System.exit(1);
-            } else {
-                compile(file);
+        else if (file.isFile())
+            compiler.submit(file);
+
+        ArrayList<CompileResult> results = compiler.finish();
+
+        if (results.size() > 1)
+            compiler.printSummary(results);
+
+        if (watch) {
+            try {
+                new CompileWatcher(file, recursive, jobs, cache, wholeProgram, optimizationLevel, out, err).watch(results);
+            } catch (IOException e) {
+                err.println(CommandLineText.ANSI_RED + "[IO Error] Unable to watch " + file.getPath()
+                        + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
             }
+            return 1;
         }
+
+        // Fail the run if any of the files could not be found or compiled
+        if (!listed)
+            return 1;
+
+        for (CompileResult result : results) {
+            if (!result.isSuccess())
+                return 1;
+        }
+
+        return 0;
     }
 
     /**
-     * Compile the file provided turning it into virtual machine code to be
-     * used and read by the jack assembler. Compilation involves tokenizing
-     * the file input stream and then parsing each token using a top down parser.
-     * The parser also provides semantic analysis on the input '.jack' file. Once
-     * parsed the code will then be turned into vm code ready for the jack assembler.
-     *
-     * @param file the file to be compiled
+     * Resolve a path given on the command line.
+     * @param workingDirectory the directory to resolve relative paths against, null for the current directory.
+     * @param path the path.
+     * @return the file the path refers to.
      */
-    private static void compile(File file) {
-        System.out.println("[Compiling] " + file.getPath());
+    private static File resolve(File workingDirectory, String path) {
+        File file = new File(path);
+        return workingDirectory == null || file.isAbsolute() ? file : new File(workingDirectory, path);
+    }
 
+    /**
+     * Parse a port number.
+     * @param text the text to parse.
+     * @return the port, or -1 if the text is not a valid port.
+     */
+    private static int parsePort(String text) {
         try {
-            CompilationEngine compilationEngine = new CompilationEngine(file);
+            int port = Integer.parseInt(text);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-            // Try running the compiler
-            try {
-                compilationEngine.run();
-            } catch (ParserException e) {
-                compilationEngine.deleteVMCode();
-                System.err.println(CommandLineText.ANSI_RED + "[Parsing error] Line "
-                        + e.getLineNumber() + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
-                System.exit(1);
-            } catch (TokenizerException e) {
-                compilationEngine.deleteVMCode();
-                System.err.println(CommandLineText.ANSI_RED + "[Tokenizer Error] Line "
-                        + e.getLineNumber() + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
-                System.exit(1);
-            }
-        } catch (IOException e) {
-            System.err.println(CommandLineText.ANSI_RED + "[IO Error] " + e.getMessage() + CommandLineText.ANSI_RESET);
-            System.exit(1);
+    /**
+     * Submit every '.jack' file in a directory to the compiler. Files are submitted as soon as
+     * they are found, so the compiler can start on them while the rest of the tree is listed.
+     * The entries of each directory are sorted so that files are always submitted in the same order.
+     * Links to directories are not followed, since a link to a parent would be searched forever.
+     *
+     * @param compiler the compiler that the files are submitted to.
+     * @param directory the directory to search.
+     * @param recursive whether to search the folders below the directory as well.
+     * @param err the stream that errors are written to.
+     * @return false if a directory could not be listed.
+     */
+    private static boolean submitDirectory(BatchCompiler compiler, File directory, boolean recursive, PrintStream err) {
+        File[] children = directory.listFiles();
+
+        // The directory could not be read
+        if (children == null) {
+            err.println(CommandLineText.ANSI_RED + "[IO Error] Unable to list " + directory.getPath()
+                    + CommandLineText.ANSI_RESET);
+            return false;
         }
+
+        boolean listed = true;
+        Arrays.sort(children);
+
+        for (File f : children) {
+            if (f.isFile() && f.getName().endsWith(".jack"))
+                compiler.submit(f);
+            else if (recursive && f.isDirectory() && !Files.isSymbolicLink(f.toPath()))
+                listed = submitDirectory(compiler, f, true, err) && listed;
+        }
+
+        return listed;
     }
 }
@@ -0,0 +1,97 @@
+package com;
+
+/**
+ * The name table interns the identifiers of a single compilation, so that
+ * every occurrence of the same name is the same string. Names are looked up
+ * straight from the characters of the source, so a name that has been seen
+ * before doesn't create a new string, and the hash code that the symbol
+ * tables use is only ever calculated once for each name.
+ */
+public class NameTable {
+    private String[] names;     // Open addressed table of the interned names, null if empty.
+    private int size;           // The number of names in the table.
+
+    /**
+     * Create an empty name table.
+     */
+    public NameTable() {
+        this.names = new String[256];
+        this.size = 0;
+    }
+
+    /**
+     * Find the interned name for some characters, adding it if it hasn't been seen before.
+     * @param source the characters containing the name.
+     * @param start the index of the first character of the name.
+     * @param length the length of the name.
+     * @return the interned name.
+     */
+    public String intern(char[] source, int start, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++)
+            hash = 31 * hash + source[start + i];
+
+        int mask = this.names.length - 1;
+        int slot = hash & mask;
+
+        while (this.names[slot] != null) {
+            String name = this.names[slot];
+            if (name.hashCode() == hash && matches(name, source, start, length))
+                return name;
+            slot = (slot + 1) & mask;
+        }
+
+        String name = new String(source, start, length);
+        this.names[slot] = name;
+
+        // Keep the table at most half full
+        if (++this.size * 2 > this.names.length)
+            this.grow();
+
+        return name;
+    }
+
+    /**
+     * Compare a name with some characters.
+     * @param name the name.
+     * @param source the characters.
+     * @param start the index of the first character.
+     * @param length the number of characters.
+     * @return true if the name is made up of the characters.
+     */
+    private static boolean matches(String name, char[] source, int start, int length) {
+        if (name.length() != length)
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != source[start + i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Double the size of the table.
+     */
+    private void grow() {
+        String[] old = this.names;
+        this.names = new String[old.length * 2];
+        int mask = this.names.length - 1;
+
+        for (String name : old) {
+            if (name == null)
+                continue;
+
+            int slot = name.hashCode() & mask;
+            while (this.names[slot] != null)
+                slot = (slot + 1) & mask;
+            this.names[slot] = name;
+        }
+    }
+
+    /**
+     * Getters.
+     */
+    public int getSize() { return this.size; }
+}
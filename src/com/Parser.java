@@ -0,0 +1,883 @@
+package com;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The parser reads the tokens of a .jack source file and builds the abstract
+ * syntax tree of its class. It only checks the syntax of the source, leaving
+ * the semantic checks and the vm code to the passes that walk the tree.
+ * Nodes are added to the tree once their children have been parsed.
+ *
+ * A syntax error in a statement or member declaration is reported, and the
+ * parser skips ahead to the next statement or member to carry on from, so that
+ * every syntax error in a file is found in one run.
+ */
+public class Parser {
+    // The precedence of each binary operator by the ordinal of its kind, 0 for the tokens that aren't one
+    private static final byte[] PRECEDENCE = new byte[Token.Kind.values().length];
+
+    static {
+        PRECEDENCE[Token.Kind.AND.ordinal()] = 1;
+        PRECEDENCE[Token.Kind.OR.ordinal()] = 1;
+        PRECEDENCE[Token.Kind.EQUALS.ordinal()] = 2;
+        PRECEDENCE[Token.Kind.GREATER_THAN.ordinal()] = 2;
+        PRECEDENCE[Token.Kind.LESS_THAN.ordinal()] = 2;
+        PRECEDENCE[Token.Kind.PLUS.ordinal()] = 3;
+        PRECEDENCE[Token.Kind.MINUS.ordinal()] = 3;
+        PRECEDENCE[Token.Kind.MULTIPLY.ordinal()] = 4;
+        PRECEDENCE[Token.Kind.DIVIDE.ordinal()] = 4;
+    }
+
+    private final Tokenizer t;                              // Tokenizer object that reads from a source file.
+    private final Ast ast;                                  // The tree that the nodes are added to.
+    private String className;                               // The name of the class, null until it has been parsed.
+
+    private final PrintStream err;                          // Stream that syntax errors are written to.
+    private final ArrayList<Diagnostic> diagnostics;        // The syntax errors found so far.
+    private ParserException lastError;                      // The last syntax error that was reported.
+    private boolean skimming;                               // If true the bodies of subroutines are skipped rather than parsed.
+
+    private int[] operators;                                // The operators of the expressions being parsed.
+    private int[] operatorLines;                            // The line of each operator.
+    private int operatorCount;                              // The number of operators on the stack.
+    private int[] operands;                                 // The operands of the expressions being parsed.
+    private int operandCount;                               // The number of operands on the stack.
+
+    /**
+     * Create a parser that reads the tokens of the tokenizer provided.
+     * @param tokenizer the tokenizer that reads the source code.
+     * @param err the stream that syntax errors are written to.
+     */
+    public Parser(Tokenizer tokenizer, PrintStream err) {
+        this.t = tokenizer;
+        this.ast = new Ast();
+        this.err = err;
+        this.diagnostics = new ArrayList<>();
+        this.operators = new int[16];
+        this.operatorLines = new int[16];
+        this.operands = new int[16];
+    }
+
+    /**
+     * Getters.
+     */
+    public String getClassName() { return this.className; }
+    public Ast getAst() { return this.ast; }
+    public ArrayList<Diagnostic> getDiagnostics() { return this.diagnostics; }
+    public boolean getSyntaxStatus() { return this.diagnostics.isEmpty(); }
+
+    /**
+     * Skim a class, parsing only the declarations of its members. The body of each
+     * subroutine is skipped by counting braces and left as an empty block, so the
+     * tree only holds the interface of the class and can't be analysed.
+     *
+     * @return the class node, which is incomplete if a syntax error was found.
+     * @throws ParserException thrown if the parser runs into a syntax error outside of the members and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    public int skimClass() throws ParserException, TokenizerException {
+        this.skimming = true;
+        return this.parseClass();
+    }
+
+    /**
+     * Parse a class.
+     * classDeclaration → class identifier { {memberDeclaration} }
+     *
+     * @return the class node, which is incomplete if a syntax error was found.
+     * @throws ParserException thrown if the parser runs into a syntax error outside of the members and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    public int parseClass() throws ParserException, TokenizerException {
+        int first = Ast.NONE, last = Ast.NONE;
+        parseKeyword(Token.Kind.CLASS);
+
+        Token identifier = this.t.getNextToken();
+        if (identifier.type != Token.Types.IDENTIFIER)
+            throw new ParserException(identifier.lineNumber, "Expected identifier got: " + identifier.lexeme);
+
+        this.className = identifier.lexeme;
+        parseSymbol(Token.Kind.LEFT_BRACE);
+
+        // Parse member declarations until exhausted
+        while (this.t.peekKind() != Token.Kind.RIGHT_BRACE) {
+            try {
+                int member = parseMemberDeclaration();
+                if (first == Ast.NONE)
+                    first = member;
+                last = link(last, member);
+            } catch (ParserException e) {
+                syntaxError(e);
+                synchronize(false);
+
+                // Nothing that follows can be part of the class
+                if (this.t.peekKind() == Token.Kind.EOF || this.t.peekKind() == Token.Kind.CLASS)
+                    return this.ast.add(Ast.Kind.CLASS, identifier.lineNumber, this.ast.string(identifier.lexeme), this.t.peekLineNumber(), first);
+            }
+        }
+
+        parseSymbol(Token.Kind.RIGHT_BRACE);
+
+        // Only one class is allowed per file, which the semantic analyser checks
+        int node = this.ast.add(Ast.Kind.CLASS, identifier.lineNumber, this.ast.string(identifier.lexeme), this.t.peekLineNumber(), first);
+        if (this.t.peekKind() == Token.Kind.EOF)
+            this.ast.setFlag(node, Ast.END_OF_FILE);
+
+        return node;
+    }
+
+    /**
+     * Parse a member declaration.
+     * memberDeclaration → classVarDeclaration | subroutineDeclaration
+     *
+     * @return the declaration node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseMemberDeclaration() throws ParserException, TokenizerException {
+        switch (this.t.peekKind()) {
+            case STATIC:
+            case FIELD:
+                return parseClassVarDeclaration();
+            case CONSTRUCTOR:
+            case FUNCTION:
+            case METHOD:
+                return parseSubroutineDeclaration();
+            default:
+                throw new ParserException(this.t.peekLineNumber(), "Expected class member declaration. Got: " + this.t.peekLexeme(1));
+        }
+    }
+
+    /**
+     * Parse the variable declaration section.
+     * classVarDeclaration → (static | field) type identifier {, identifier} ;
+     *
+     * @return the declaration node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseClassVarDeclaration() throws ParserException, TokenizerException {
+        Ast.Kind kind = this.t.peekKind() == Token.Kind.FIELD ? Ast.Kind.FIELD : Ast.Kind.STATIC;
+        int line = this.t.peekLineNumber();
+        this.t.advance();
+
+        int declaration = parseVariableDeclaration(false, kind, line);
+        parseSymbol(Token.Kind.SEMICOLON);
+        return declaration;
+    }
+
+    /**
+     * Parse the type declaration for a variable.
+     * type → int | char | boolean | identifier.
+     *
+     * @return the index of the type that has been detected.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseType() throws ParserException, TokenizerException {
+        Token type = this.t.getNextToken();
+
+        if (type.kind != Token.Kind.INT && type.kind != Token.Kind.CHAR
+                && type.kind != Token.Kind.BOOLEAN && type.type != Token.Types.IDENTIFIER)
+            throw new ParserException(type.lineNumber, "Expected type declaration. Got: " + type.lexeme);
+
+        return this.ast.string(type.lexeme);
+    }
+
+    /**
+     * Parse the subroutine declaration section.
+     * subroutineDeclaration → (constructor | function | method) (type|void) identifier (paramList) subroutineBody
+     *
+     * @return the subroutine node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseSubroutineDeclaration() throws ParserException, TokenizerException {
+        int type;
+        Ast.Kind kind;
+
+        switch (this.t.peekKind()) {
+            case CONSTRUCTOR:
+                kind = Ast.Kind.CONSTRUCTOR;
+                break;
+            case FUNCTION:
+                kind = Ast.Kind.FUNCTION;
+                break;
+            default:
+                kind = Ast.Kind.METHOD;
+        }
+
+        this.t.advance();
+        int typeLine = this.t.peekLineNumber();
+
+        // Resolve the type of the function
+        if (this.t.peekKind() == Token.Kind.VOID) {
+            this.t.advance();
+            type = this.ast.string("void");
+        } else
+            type = parseType();
+
+        // Now resolve the identifier
+        if (this.t.peekKind() != Token.Kind.IDENTIFIER)
+            throw new ParserException(this.t.peekLineNumber(), "Expected identifier. Got: " + this.t.peekLexeme(1));
+        Token identifier = this.t.getNextToken();
+
+        int typeNode = this.ast.add(Ast.Kind.TYPE, typeLine, type, 0, Ast.NONE);
+
+        parseSymbol(Token.Kind.LEFT_PARENTHESIS);
+        int last = parseParamList(typeNode);
+        parseSymbol(Token.Kind.RIGHT_PARENTHESIS);
+        link(last, this.skimming ? skipStatementBody() : parseStatementBody());
+
+        return this.ast.add(kind, identifier.lineNumber, this.ast.string(identifier.lexeme), 0, typeNode);
+    }
+
+    /**
+     * Parse the parameter list.
+     * paramList → type identifier {, type identifier} | ε
+     *
+     * @param last the node that the parameters follow.
+     * @return the last parameter, or the node they follow if there are none.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseParamList(int last) throws ParserException, TokenizerException {
+        if (this.t.peekKind() == Token.Kind.RIGHT_PARENTHESIS)
+            return last;
+
+        last = link(last, parseVariableDeclaration(true, Ast.Kind.PARAMETER, this.t.peekLineNumber()));
+
+        while (this.t.peekKind() == Token.Kind.COMMA) {
+            this.t.advance();
+            last = link(last, parseVariableDeclaration(true, Ast.Kind.PARAMETER, this.t.peekLineNumber()));
+        }
+
+        return last;
+    }
+
+    /**
+     * Parse a statement body.
+     * { {statement} }
+     *
+     * @return the block node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseStatementBody() throws ParserException, TokenizerException {
+        int first = Ast.NONE, last = Ast.NONE;
+        int line = this.t.peekLineNumber();
+
+        parseSymbol(Token.Kind.LEFT_BRACE);
+        while (this.t.peekKind() != Token.Kind.RIGHT_BRACE) {
+            try {
+                int statement = parseStatement();
+                if (first == Ast.NONE)
+                    first = statement;
+                last = link(last, statement);
+            } catch (ParserException e) {
+                syntaxError(e);
+
+                // Leave it to the member if the statement runs into the next one
+                if (!synchronize(true))
+                    throw e;
+            }
+        }
+
+        int closeLine = this.t.peekLineNumber();
+        parseSymbol(Token.Kind.RIGHT_BRACE);
+
+        return this.ast.add(Ast.Kind.BLOCK, line, 0, closeLine, first);
+    }
+
+    /**
+     * Skip a statement body without parsing its statements.
+     * { ... }
+     *
+     * @return the block node, which has no statements.
+     * @throws ParserException thrown if the body isn't closed.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int skipStatementBody() throws ParserException, TokenizerException {
+        int line = this.t.peekLineNumber();
+
+        parseSymbol(Token.Kind.LEFT_BRACE);
+        this.t.skipBlock();
+
+        int closeLine = this.t.peekLineNumber();
+        parseSymbol(Token.Kind.RIGHT_BRACE);
+
+        return this.ast.add(Ast.Kind.BLOCK, line, 0, closeLine, Ast.NONE);
+    }
+
+    /**
+     * Parse a statement.
+     * statement → varDeclarationStatement | letStatement | ifStatement | whileStatement | doStatement | returnStatement
+     *
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseStatement() throws ParserException, TokenizerException {
+        int line = this.t.peekLineNumber();
+
+        switch (this.t.peekKind()) {
+            case VAR:
+                return parseVarDeclarationStatement(line);
+            case LET:
+                return parseLetStatement(line);
+            case IF:
+                return parseIfStatement(line);
+            case WHILE:
+                return parseWhileStatement(line);
+            case DO:
+                return parseDoStatement(line);
+            case RETURN:
+                return parseReturnStatement(line);
+            default:
+                throw new ParserException(line, "Expected statement. Got: " + this.t.peekLexeme(1));
+        }
+    }
+
+    /**
+     * Parse a variable declaration within a statement.
+     * varDeclarationStatement → var type identifier { , identifier } ;
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseVarDeclarationStatement(int line) throws ParserException, TokenizerException {
+        parseKeyword(Token.Kind.VAR);
+        int declaration = parseVariableDeclaration(false, Ast.Kind.LOCAL, line);
+        parseSymbol(Token.Kind.SEMICOLON);
+
+        return declaration;
+    }
+
+    /**
+     * Parse a let statement.
+     * letStatement → let identifier [ [ expression ] ] = expression ;
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseLetStatement(int line) throws ParserException, TokenizerException {
+        parseKeyword(Token.Kind.LET);
+        int target = parseName();
+        int last = target;
+
+        // Check if the identifier has an array index after it
+        if (this.t.peekKind() == Token.Kind.LEFT_BRACKET) {
+            this.t.advance();
+            last = link(last, parseExpression());
+            parseSymbol(Token.Kind.RIGHT_BRACKET);
+        }
+
+        parseSymbol(Token.Kind.EQUALS);
+        link(last, parseExpression());
+        parseSymbol(Token.Kind.SEMICOLON);
+
+        return this.ast.add(Ast.Kind.LET, line, 0, 0, target);
+    }
+
+    /**
+     * Parse an if statement.
+     * ifStatement → if ( expression ) { {statement} } [else { {statement} }]
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseIfStatement(int line) throws ParserException, TokenizerException {
+        parseKeyword(Token.Kind.IF);
+        int condition = parseConditionalStatement();
+        int statements = link(condition, parseStatementBody());
+
+        // Optional else statement
+        if (this.t.peekKind() == Token.Kind.ELSE) {
+            this.t.advance();
+            link(statements, parseStatementBody());
+        }
+
+        return this.ast.add(Ast.Kind.IF, line, 0, 0, condition);
+    }
+
+    /**
+     * Parse a while statement.
+     * whileStatement → while ( expression ) { {statement} }
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseWhileStatement(int line) throws ParserException, TokenizerException {
+        parseKeyword(Token.Kind.WHILE);
+        int condition = parseConditionalStatement();
+        link(condition, parseStatementBody());
+
+        return this.ast.add(Ast.Kind.WHILE, line, 0, 0, condition);
+    }
+
+    /**
+     * Parse a do statement.
+     * doStatement → do subroutineCall ;
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseDoStatement(int line) throws ParserException, TokenizerException {
+        parseKeyword(Token.Kind.DO);
+        int call = parseSubroutineCall(parseName());
+        parseSymbol(Token.Kind.SEMICOLON);
+
+        return this.ast.add(Ast.Kind.DO, line, 0, 0, call);
+    }
+
+    /**
+     * Parse a return statement.
+     * returnStatement → return [ expression ] ;
+     *
+     * @param line the line the statement starts on.
+     * @return the statement node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseReturnStatement(int line) throws ParserException, TokenizerException {
+        int value = Ast.NONE;
+        parseKeyword(Token.Kind.RETURN);
+
+        if (this.t.peekKind() != Token.Kind.SEMICOLON)
+            value = parseExpression();
+
+        int endLine = this.t.peekLineNumber();
+        parseSymbol(Token.Kind.SEMICOLON);
+
+        return this.ast.add(Ast.Kind.RETURN, line, 0, endLine, value);
+    }
+
+    /**
+     * Parse a subroutine call, once its name has been parsed.
+     * subroutineCall → identifier [ . identifier ] ( expressionList )
+     *
+     * @param name the name node of the subroutine.
+     * @return the call node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseSubroutineCall(int name) throws ParserException, TokenizerException {
+        parseSymbol(Token.Kind.LEFT_PARENTHESIS);
+        parseExpressionList(name);
+
+        int closeLine = this.t.peekLineNumber();
+        parseSymbol(Token.Kind.RIGHT_PARENTHESIS);
+
+        return this.ast.add(Ast.Kind.CALL, this.ast.getLine(name), Ast.NONE, closeLine, name);
+    }
+
+    /**
+     * Parse an expression list.
+     * expressionList → expression { , expression } | ε
+     *
+     * @param last the node that the expressions follow.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private void parseExpressionList(int last) throws ParserException, TokenizerException {
+        if (this.t.peekKind() != Token.Kind.RIGHT_PARENTHESIS) {
+            last = link(last, parseExpression());
+
+            while (this.t.peekKind() == Token.Kind.COMMA) {
+                this.t.advance();
+                last = link(last, parseExpression());
+            }
+        }
+    }
+
+    /**
+     * Parse an expression.
+     * expression → factor { operator factor }
+     * factor → ( - | ~ | e ) ( operand | (expression) )
+     *
+     * The binary operators are left associative, and bind from loosest to tightest as
+     * & and |, then = > and <, then + and -, then * and /. Rather than a method for each
+     * level of precedence, the operators and operands are held on stacks and an operator
+     * is applied once one that binds as loosely or looser follows it. Parentheses are kept
+     * on the operator stack too, so however deeply they are nested the parser doesn't recurse.
+     *
+     * @return the expression node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseExpression() throws ParserException, TokenizerException {
+        // An array index or subroutine argument starts a new expression above this one on the stacks
+        int operatorBase = this.operatorCount;
+        int operandBase = this.operandCount;
+        int precedence;
+
+        while (true) {
+            // Unary operators and opening parentheses wait on the stack for the operand they apply to
+            Token.Kind operator = this.t.peekKind();
+            if (operator == Token.Kind.MINUS || operator == Token.Kind.NOT) {
+                pushOperator(~operator.ordinal(), this.t.peekLineNumber());
+                this.t.advance();
+                operator = this.t.peekKind();
+            }
+
+            if (operator == Token.Kind.LEFT_PARENTHESIS) {
+                pushOperator(operator.ordinal(), this.t.peekLineNumber());
+                this.t.advance();
+                continue;
+            }
+
+            pushOperand(parseOperand());
+            applyUnaryOperators(operatorBase);
+
+            // Close any parentheses that the operand finishes
+            while (this.t.peekKind() == Token.Kind.RIGHT_PARENTHESIS && hasParenthesis(operatorBase)) {
+                applyOperators(operatorBase, 0);
+                this.operatorCount--;
+                this.t.advance();
+                applyUnaryOperators(operatorBase);
+            }
+
+            precedence = PRECEDENCE[this.t.peekKind().ordinal()];
+            if (precedence == 0)
+                break;
+
+            applyOperators(operatorBase, precedence);
+            pushOperator(this.t.peekKind().ordinal(), this.t.peekLineNumber());
+            this.t.advance();
+        }
+
+        applyOperators(operatorBase, 0);
+
+        // A parenthesis that is still open was never closed
+        if (this.operatorCount > operatorBase)
+            parseSymbol(Token.Kind.RIGHT_PARENTHESIS);
+
+        this.operandCount = operandBase;
+        return this.operands[operandBase];
+    }
+
+    /**
+     * Parse an operand.
+     * operand → integerConstant | identifier [.identifier ] [ [ expression ] | (expressionList) ] | stringLiteral | true | false | null | this | subroutineCall
+     * (edited to allow this keyword to represent a class variable)
+     *
+     * @return the expression node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseOperand() throws ParserException, TokenizerException {
+        int line = this.t.peekLineNumber();
+
+        switch (this.t.peekKind()) {
+            case INTEGER:
+                return this.ast.add(Ast.Kind.INTEGER, line, this.ast.string(this.t.getNextToken().lexeme), 0, Ast.NONE);
+            case STRING_CONSTANT:
+                return this.ast.add(Ast.Kind.STRING, line, this.ast.string(this.t.getNextToken().lexeme), 0, Ast.NONE);
+            case TRUE:
+            case FALSE:
+            case NULL:
+                int keyword = this.t.peekKind().ordinal();
+                this.t.advance();
+                return this.ast.add(Ast.Kind.KEYWORD, line, keyword, 0, Ast.NONE);
+            case IDENTIFIER:
+            case THIS:
+                int name = parseName();
+
+                // If the token is part of an array index
+                if (this.t.peekKind() == Token.Kind.LEFT_BRACKET) {
+                    int indexLine = this.t.peekLineNumber();
+                    this.t.advance();
+                    link(name, parseExpression());
+                    parseSymbol(Token.Kind.RIGHT_BRACKET);
+
+                    return this.ast.add(Ast.Kind.ARRAY_ELEMENT, line, 0, indexLine, name);
+
+                // If the token is part of a subroutine call
+                } else if (this.t.peekKind() == Token.Kind.LEFT_PARENTHESIS)
+                    return parseSubroutineCall(name);
+
+                return this.ast.add(Ast.Kind.VARIABLE, line, 0, 0, name);
+            default:
+                // Should never be reached with 'good' source code
+                throw new ParserException(line, "Expected beginning of operand. Got: " + this.t.peekLexeme(1));
+        }
+    }
+
+    /*
+    ###########################################################
+    Helper functions that are not strictly part of the grammar.
+    ###########################################################
+     */
+
+    /**
+     * Make a node the next sibling of another.
+     * @param previous the node before, or NONE if there isn't one.
+     * @param node the node that follows it.
+     * @return the node that follows, so that more nodes can be linked after it.
+     */
+    private int link(int previous, int node) {
+        if (previous != Ast.NONE)
+            this.ast.setNextSibling(previous, node);
+        return node;
+    }
+
+    /**
+     * Push an operator onto the operator stack.
+     * @param operator the ordinal of a binary operator or opening parenthesis, or its complement for a unary operator.
+     * @param line the line of the operator.
+     */
+    private void pushOperator(int operator, int line) {
+        if (this.operatorCount == this.operators.length) {
+            this.operators = Arrays.copyOf(this.operators, this.operatorCount * 2);
+            this.operatorLines = Arrays.copyOf(this.operatorLines, this.operatorCount * 2);
+        }
+
+        this.operators[this.operatorCount] = operator;
+        this.operatorLines[this.operatorCount++] = line;
+    }
+
+    /**
+     * Push an operand onto the operand stack.
+     * @param operand the expression node.
+     */
+    private void pushOperand(int operand) {
+        if (this.operandCount == this.operands.length)
+            this.operands = Arrays.copyOf(this.operands, this.operandCount * 2);
+
+        this.operands[this.operandCount++] = operand;
+    }
+
+    /**
+     * Check whether the expression being parsed has an open parenthesis.
+     * @param operatorBase the bottom of the operator stack for the expression.
+     * @return whether there is an open parenthesis.
+     */
+    private boolean hasParenthesis(int operatorBase) {
+        for (int i = this.operatorCount - 1; i >= operatorBase; i--) {
+            if (this.operators[i] == Token.Kind.LEFT_PARENTHESIS.ordinal())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply the unary operators on top of the operator stack to the operand on top of the operand stack.
+     * @param operatorBase the bottom of the operator stack for the expression.
+     */
+    private void applyUnaryOperators(int operatorBase) {
+        while (this.operatorCount > operatorBase && this.operators[this.operatorCount - 1] < 0) {
+            this.operatorCount--;
+            this.operands[this.operandCount - 1] = this.ast.add(Ast.Kind.UNARY, this.operatorLines[this.operatorCount],
+                    ~this.operators[this.operatorCount], 0, this.operands[this.operandCount - 1]);
+        }
+    }
+
+    /**
+     * Apply the binary operators on top of the operator stack that bind at least as tightly as the
+     * precedence given, stopping at an open parenthesis.
+     * @param operatorBase the bottom of the operator stack for the expression.
+     * @param precedence the precedence of the operator that follows, or 0 to apply them all.
+     */
+    private void applyOperators(int operatorBase, int precedence) {
+        while (this.operatorCount > operatorBase && this.operators[this.operatorCount - 1] >= 0
+                && PRECEDENCE[this.operators[this.operatorCount - 1]] >= Math.max(precedence, 1)) {
+            int right = this.operands[--this.operandCount];
+            int left = this.operands[this.operandCount - 1];
+            this.operatorCount--;
+
+            link(left, right);
+            this.operands[this.operandCount - 1] = this.ast.add(Ast.Kind.BINARY, this.operatorLines[this.operatorCount],
+                    this.operators[this.operatorCount], 0, left);
+        }
+    }
+
+    /**
+     * Output a syntax error that the parser is going to recover from to the terminal.
+     * @param e the exception describing the error.
+     */
+    private void syntaxError(ParserException e) {
+        // A statement that can't recover passes its error on to the member it is part of
+        if (e == this.lastError)
+            return;
+
+        this.err.println(CommandLineText.ANSI_RED + "[Parsing error] Line " + e.getLineNumber() + ": " + e.getMessage() + CommandLineText.ANSI_RESET);
+        this.diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.PARSER, e.getLineNumber(), e.getMessage()));
+        this.lastError = e;
+    }
+
+    /**
+     * Skip the tokens after a syntax error until a point that parsing can carry on from. A statement
+     * carries on after a ';' or a block, before the '}' that closes its block, or before the next
+     * statement. A member carries on before the next member or the '}' that closes the class.
+     * Any braces opened while skipping are skipped with the tokens between them.
+     * @param statement whether a statement is being recovered, otherwise a member declaration.
+     * @return false if a statement ran into the next member or the end of the class, so can't carry on.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private boolean synchronize(boolean statement) throws TokenizerException {
+        int depth = 0;
+
+        // The expression that was being parsed is abandoned
+        this.operatorCount = 0;
+        this.operandCount = 0;
+
+        while (true) {
+            switch (this.t.peekKind()) {
+                case EOF:
+                case CLASS:
+                case STATIC:
+                case FIELD:
+                case CONSTRUCTOR:
+                case FUNCTION:
+                case METHOD:
+                    return !statement;
+                case VAR:
+                case LET:
+                case IF:
+                case WHILE:
+                case DO:
+                case RETURN:
+                    if (statement && depth == 0)
+                        return true;
+                    break;
+                case SEMICOLON:
+                    if (statement && depth == 0) {
+                        this.t.advance();
+                        return true;
+                    }
+                    break;
+                case LEFT_BRACE:
+                    depth++;
+                    break;
+                case RIGHT_BRACE:
+                    // Between members, only the last brace in the file closes the class
+                    if (depth == 0 && (statement || this.t.peekKind(2) == Token.Kind.EOF || this.t.peekKind(2) == Token.Kind.CLASS))
+                        return true;
+                    else if (depth == 0)
+                        break;
+
+                    // An if statement carries on with its else block
+                    if (--depth == 0) {
+                        this.t.advance();
+                        if (this.t.peekKind() != Token.Kind.ELSE)
+                            return true;
+                        continue;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            this.t.advance();
+        }
+    }
+
+    /**
+     * Parse a symbol, given the symbol that is being looked for.
+     *
+     * @param symbol the symbol to be parsed.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private void parseSymbol(Token.Kind symbol) throws ParserException, TokenizerException {
+        if (this.t.peekKind() != symbol)
+            throw new ParserException(this.t.peekLineNumber(), "Expected " + symbol.getLexeme() + ". Got: " + this.t.peekLexeme(1));
+        this.t.advance();
+    }
+
+    /**
+     * Parse a keyword, given the keyword that is being looked for.
+     *
+     * @param keyword the keyword to be parsed.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private void parseKeyword(Token.Kind keyword) throws ParserException, TokenizerException {
+        if (this.t.peekKind() != keyword)
+            throw new ParserException(this.t.peekLineNumber(), "Expected " + keyword.getLexeme() + " keyword. Got: " + this.t.peekLexeme(1));
+        this.t.advance();
+    }
+
+    /**
+     * Parse the name of a variable or subroutine that is used, which can be scoped by a class or variable.
+     * identifier [ . identifier ]
+     *
+     * @return the name node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseName() throws ParserException, TokenizerException {
+        Token newToken = this.t.getNextToken();
+        int scopedName = Ast.NONE;
+
+        // If the token is not an identifier we can immediately throw an error
+        if (newToken.type != Token.Types.IDENTIFIER && newToken.kind != Token.Kind.THIS)
+            throw new ParserException(newToken.lineNumber, "Expected identifier. Got: " + newToken.lexeme);
+
+        if (this.t.peekKind() == Token.Kind.DOT) {
+            this.t.advance(); // Skip the '.'
+            Token newScopedToken = this.t.getNextToken();
+            scopedName = this.ast.add(Ast.Kind.NAME, newScopedToken.lineNumber, this.ast.string(newScopedToken.lexeme), 0, Ast.NONE);
+        }
+
+        return this.ast.add(Ast.Kind.NAME, newToken.lineNumber, this.ast.string(newToken.lexeme), 0, scopedName);
+    }
+
+    /**
+     * Parse a variable declaration.
+     *
+     * @param singleIdentifierOnly whether to continue searching for more identifiers or just detect a single identifier.
+     * @param kind the kind of the declaration i.e. static, field, parameter, local.
+     * @param line the line the declaration starts on.
+     * @return the declaration node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseVariableDeclaration(boolean singleIdentifierOnly, Ast.Kind kind, int line) throws ParserException, TokenizerException {
+        int type = parseType();
+
+        Token identifier = this.t.getNextToken();
+        int first = this.ast.add(Ast.Kind.NAME, identifier.lineNumber, this.ast.string(identifier.lexeme), 0, Ast.NONE);
+        int nextLine = this.t.peekLineNumber();
+
+        // Some variable declarations allow for multiple variables at once to be declared
+        if (!singleIdentifierOnly) {
+            int last = first;
+
+            while (this.t.peekKind() == Token.Kind.COMMA) {
+                this.t.advance();
+                identifier = this.t.getNextToken();
+                last = link(last, this.ast.add(Ast.Kind.NAME, identifier.lineNumber, this.ast.string(identifier.lexeme), 0, Ast.NONE));
+            }
+        }
+
+        return this.ast.add(kind, line, type, nextLine, first);
+    }
+
+    /**
+     * Parse a conditional statement of the form (condition).
+     * This is used as part of a while loop or if statement.
+     *
+     * @return the condition node.
+     * @throws ParserException thrown if the parser runs into a syntax error and must stop.
+     * @throws TokenizerException thrown if the tokenizer runs into an issue reading the source code.
+     */
+    private int parseConditionalStatement() throws ParserException, TokenizerException {
+        parseSymbol(Token.Kind.LEFT_PARENTHESIS);
+        int condition = parseExpression();
+        parseSymbol(Token.Kind.RIGHT_PARENTHESIS);
+        return condition;
+    }
+}
@@ -0,0 +1,936 @@
+package com;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+
+/**
+ * The peephole optimizer rewrites the vm code of a subroutine, replacing short
+ * sequences of instructions that the code generator writes for every statement
+ * with shorter sequences that do the same. Each rewrite is a rule, and only the
+ * rules in the optimizer's rule set are applied.
+ *
+ * The instructions are copied one at a time, and after each one the rules are
+ * matched against the end of the code copied so far, so the instructions that a
+ * rule writes can be matched by the next. The code is copied again until a
+ * copy applies no rule, since a rule can make the code longer as well as shorter.
+ *
+ * Arithmetic on constants is folded with the 16 bit wraparound of the Hack
+ * computer. A constant is a 'push constant', which is never negative, optionally
+ * followed by a 'neg' or 'not'. Temp 1 and temp 2 are used to hold values while
+ * a multiplication by a constant is replaced with additions.
+ *
+ * Some rules move or remove a 'not' before an if-goto. These are only applied
+ * when the condition is known to be true (-1) or false (0), as a condition that
+ * is any other number behaves differently once negated.
+ */
+public class PeepholeOptimizer {
+    /**
+     * The rewrites that the optimizer can apply.
+     */
+    public enum Rule {
+        /** 'not; not' and 'neg; neg' are removed. */
+        DOUBLE_NEGATION,
+        /** Arithmetic, logic and comparisons of constants, including Math.multiply and Math.divide, are replaced with the result. */
+        CONSTANT_FOLDING,
+        /** x+0, x-0, 0-x, x*1, x/1, x*-1, x/-1, x*0, x|0 and x&-1 are simplified. */
+        ALGEBRAIC_IDENTITY,
+        /** Multiplication by a constant becomes a chain of doublings and additions, when the cost model estimates it is faster. */
+        STRENGTH_REDUCTION,
+        /** An if-goto on a constant, such as 'push constant 0; not; if-goto L', becomes a goto or is removed. */
+        CONSTANT_CONDITION,
+        /** 'if-goto IF_TRUE; goto IF_FALSE; label IF_TRUE' becomes 'not; if-goto IF_FALSE; label IF_TRUE'. */
+        BOOLEAN_BRANCH,
+        /** A while loop is rotated so that its condition is tested at the end, without a 'not' or a goto in each iteration. */
+        LOOP_INVERSION,
+        /** Storing a variable or constant in an array doesn't shuffle it through 'pop temp 0; push temp 0'. */
+        ARRAY_STORE,
+        /** A goto to the label that follows it is removed. */
+        JUMP_TO_NEXT,
+        /** The instructions after a goto or return, up to the next label, are removed. */
+        UNREACHABLE_CODE,
+        /** Labels that are never jumped to are removed. */
+        UNUSED_LABEL
+    }
+
+    private static final String MULTIPLY = "Math.multiply";
+    private static final String DIVIDE = "Math.divide";
+    private static final int CALL_CYCLES = 60;              // Estimated cycles to call a subroutine and return from it.
+    private static final int MULTIPLY_CYCLES = 1000;        // Estimated cycles of Math.multiply, which loops over the 16 bits of its argument.
+
+    private final EnumSet<Rule> rules;                      // The rules that are applied.
+
+    /**
+     * Create an optimizer that applies every rule.
+     */
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    /**
+     * Create an optimizer that applies some of the rules.
+     * @param rules the rules to apply.
+     */
+    public PeepholeOptimizer(EnumSet<Rule> rules) {
+        this.rules = EnumSet.copyOf(rules);
+    }
+
+    /**
+     * Get the rules that are applied.
+     * @return the rule set.
+     */
+    public EnumSet<Rule> getRules() { return EnumSet.copyOf(this.rules); }
+
+    /**
+     * Optimize the vm code of a subroutine.
+     * @param code the vm code, which isn't changed.
+     * @return the optimized vm code.
+     */
+    public VMCode optimize(VMCode code) {
+        if (this.rules.contains(Rule.LOOP_INVERSION))
+            code = this.invertLoops(code);
+
+        boolean applied;
+        do {
+            VMCode rewritten = new VMCode();
+            applied = this.rewrite(code, rewritten);
+            code = rewritten;
+
+            if (this.rules.contains(Rule.UNUSED_LABEL)) {
+                VMCode used = this.removeUnusedLabels(code);
+                applied |= used.getSize() < code.getSize();
+                code = used;
+            }
+        } while (applied);
+
+        return code;
+    }
+
+    /**
+     * Copy vm code, applying the rules to the end of the copy after each instruction.
+     * @param code the vm code.
+     * @param rewritten the empty code that the rewritten copy is written to.
+     * @return whether any rule was applied.
+     */
+    private boolean rewrite(VMCode code, VMCode rewritten) {
+        boolean applied = false;
+
+        for (int i = 0; i < code.getSize(); i++) {
+            rewritten.add(code, i);
+            applied |= this.reduce(rewritten);
+        }
+
+        return applied;
+    }
+
+    /**
+     * Apply the rules to the end of the code until none of them match.
+     * @param code the code being rewritten.
+     * @return whether any rule was applied.
+     */
+    private boolean reduce(VMCode code) {
+        boolean applied = false;
+        while (this.applyRule(code))
+            applied = true;
+        return applied;
+    }
+
+    /**
+     * Apply the first rule that matches the end of the code.
+     * @param code the code being rewritten.
+     * @return whether a rule was applied.
+     */
+    private boolean applyRule(VMCode code) {
+        int size = code.getSize();
+        if (size < 2)
+            return false;
+
+        VMCode.Opcode last = code.getOpcode(size - 1);
+        VMCode.Opcode previous = code.getOpcode(size - 2);
+
+        if (this.rules.contains(Rule.UNREACHABLE_CODE) && last != VMCode.Opcode.LABEL
+                && (previous == VMCode.Opcode.GOTO || previous == VMCode.Opcode.RETURN)) {
+            code.truncate(size - 1);
+            return true;
+        }
+
+        if (this.rules.contains(Rule.DOUBLE_NEGATION) && last == previous
+                && (last == VMCode.Opcode.NOT || last == VMCode.Opcode.NEG)) {
+            code.truncate(size - 2);
+            return true;
+        }
+
+        switch (last) {
+            case ADD:
+            case SUB:
+            case AND:
+            case OR:
+            case EQ:
+            case GT:
+            case LT:
+            case NEG:
+            case NOT:
+            case CALL:
+                return (this.rules.contains(Rule.CONSTANT_FOLDING) && this.foldConstants(code))
+                        || (this.rules.contains(Rule.ALGEBRAIC_IDENTITY) && this.simplify(code))
+                        || (this.rules.contains(Rule.STRENGTH_REDUCTION) && this.reduceStrength(code));
+            case IF_GOTO:
+                return this.rules.contains(Rule.CONSTANT_CONDITION) && this.foldConstantCondition(code);
+            case LABEL:
+                return (this.rules.contains(Rule.JUMP_TO_NEXT) && this.removeJumpToNext(code))
+                        || (this.rules.contains(Rule.BOOLEAN_BRANCH) && this.invertBranch(code));
+            case POP:
+                return this.rules.contains(Rule.ARRAY_STORE) && this.reorderArrayStore(code);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Replace an if-goto on a constant at the end of the code with a goto if it always jumps,
+     * or remove it if it never does.
+     * @param code the code being rewritten.
+     * @return whether the if-goto was on a constant.
+     */
+    private boolean foldConstantCondition(VMCode code) {
+        int jump = code.getSize() - 1;
+        int condition = jump - 1;
+        int start = constantStart(code, condition);
+        if (start < 0)
+            return false;
+
+        boolean jumps = constantValue(code, start, condition) != 0;
+        VMCode.Label label = code.getLabel(jump);
+        int number = code.getValue(jump);
+
+        code.truncate(start);
+        if (jumps) {
+            code.label(VMCode.Opcode.GOTO, label, number);
+            this.reduce(code);
+        }
+
+        return true;
+    }
+
+    /**
+     * Replace an operation on constants at the end of the code with its result.
+     * @param code the code being rewritten.
+     * @return whether the operation was folded.
+     */
+    private boolean foldConstants(VMCode code) {
+        int operation = code.getSize() - 1;
+        VMCode.Opcode opcode = code.getOpcode(operation);
+        int rightStart = constantStart(code, operation - 1);
+        if (rightStart < 0)
+            return false;
+
+        int right = constantValue(code, rightStart, operation - 1);
+        int start;
+        int result;
+
+        if (opcode == VMCode.Opcode.NEG || opcode == VMCode.Opcode.NOT) {
+            start = rightStart;
+            result = opcode == VMCode.Opcode.NEG ? (short) -right : ~right;
+
+            // A negated constant is already as short as it can be unless the result isn't negative
+            if (constantLength(result) >= operation - start + 1)
+                return false;
+        } else {
+            if (opcode == VMCode.Opcode.CALL && !isCall(code, operation, MULTIPLY) && !isCall(code, operation, DIVIDE))
+                return false;
+
+            start = rightStart > 0 ? constantStart(code, rightStart - 1) : -1;
+            if (start < 0)
+                return false;
+
+            int left = constantValue(code, start, rightStart - 1);
+            switch (opcode) {
+                case ADD:
+                    result = (short) (left + right);
+                    break;
+                case SUB:
+                    result = (short) (left - right);
+                    break;
+                case AND:
+                    result = left & right;
+                    break;
+                case OR:
+                    result = left | right;
+                    break;
+                case EQ:
+                    result = left == right ? -1 : 0;
+                    break;
+                case GT:
+                    result = left > right ? -1 : 0;
+                    break;
+                case LT:
+                    result = left < right ? -1 : 0;
+                    break;
+                default:
+                    if (isCall(code, operation, MULTIPLY)) {
+                        result = (short) (left * right);
+                        break;
+                    }
+
+                    // Division by zero is an error at run time, and -32768 has no absolute value
+                    if (right == 0 || left == Short.MIN_VALUE || right == Short.MIN_VALUE)
+                        return false;
+                    result = left / right;
+                    break;
+            }
+        }
+
+        code.truncate(start);
+        pushConstant(code, result);
+        return true;
+    }
+
+    /**
+     * Simplify an operation at the end of the code that has a constant operand,
+     * when the result is the other operand, its negation, zero or a power of two times it.
+     * @param code the code being rewritten.
+     * @return whether the operation was simplified.
+     */
+    private boolean simplify(VMCode code) {
+        int operation = code.getSize() - 1;
+        VMCode.Opcode opcode = code.getOpcode(operation);
+        boolean multiply = isCall(code, operation, MULTIPLY);
+        boolean divide = isCall(code, operation, DIVIDE);
+        if (opcode == VMCode.Opcode.NEG || opcode == VMCode.Opcode.NOT || (opcode == VMCode.Opcode.CALL && !multiply && !divide))
+            return false;
+
+        // x op c, with x somewhere before the constant
+        int constant = constantStart(code, operation - 1);
+        if (constant > 0) {
+            int value = constantValue(code, constant, operation - 1);
+            int operand = operandStart(code, constant - 1);
+
+            if ((value == 0 && (opcode == VMCode.Opcode.ADD || opcode == VMCode.Opcode.SUB || opcode == VMCode.Opcode.OR))
+                    || (value == 1 && (multiply || divide)) || (value == -1 && opcode == VMCode.Opcode.AND)) {
+                code.truncate(constant);
+                return true;
+            }
+
+            if (value == -1 && (multiply || divide)) {
+                code.truncate(constant);
+                code.add(VMCode.Opcode.NEG);
+                return true;
+            }
+
+            if (operand >= 0 && value == 0 && (multiply || opcode == VMCode.Opcode.AND))
+                return this.multiplyByZero(code, operand);
+        }
+
+        // c op x, with the constant just before x
+        int operand = operandStart(code, operation - 1);
+        constant = operand > 0 ? constantStart(code, operand - 1) : -1;
+        if (constant < 0)
+            return false;
+
+        int value = constantValue(code, constant, operand - 1);
+        boolean identity = (value == 0 && (opcode == VMCode.Opcode.ADD || opcode == VMCode.Opcode.OR))
+                || (value == 1 && multiply) || (value == -1 && opcode == VMCode.Opcode.AND);
+
+        boolean negation = (value == 0 && opcode == VMCode.Opcode.SUB) || (value == -1 && multiply);
+
+        if (identity || negation) {
+            code.truncate(operation);
+            for (int i = constant; i < operand; i++)
+                code.remove(constant);
+
+            if (negation)
+                code.add(VMCode.Opcode.NEG);
+
+            return true;
+        }
+
+        if (value == 0 && (multiply || opcode == VMCode.Opcode.AND))
+            return this.multiplyByZero(code, constant);
+
+        return false;
+    }
+
+    /**
+     * Replace the multiplication of a value by zero at the end of the code with zero. The value
+     * is removed if it has no side effects, otherwise it is still evaluated and anded with zero.
+     * @param code the code being rewritten.
+     * @param start the index of the first instruction of the multiplication's operands.
+     * @return whether the code was changed.
+     */
+    private boolean multiplyByZero(VMCode code, int start) {
+        int operation = code.getSize() - 1;
+
+        for (int i = start; i < operation; i++) {
+            if (code.getOpcode(i) == VMCode.Opcode.CALL) {
+                if (code.getOpcode(operation) == VMCode.Opcode.AND)
+                    return false;
+
+                code.truncate(operation);
+                code.add(VMCode.Opcode.AND);
+                return true;
+            }
+        }
+
+        code.truncate(start);
+        pushConstant(code, 0);
+        return true;
+    }
+
+    /**
+     * Replace a multiplication by a constant at the end of the code with additions, when the cost
+     * model estimates that they take fewer cycles than calling Math.multiply. The constant is written
+     * as binary digits, or as signed digits when that needs fewer additions, and the other operand
+     * is multiplied by it from the highest digit down, doubling and then adding or subtracting it.
+     * @param code the code being rewritten.
+     * @return whether the multiplication was replaced.
+     */
+    private boolean reduceStrength(VMCode code) {
+        int operation = code.getSize() - 1;
+        if (!isCall(code, operation, MULTIPLY))
+            return false;
+
+        // Either x * c, or c * x with the constant just before x
+        int constant = constantStart(code, operation - 1);
+        int constantEnd = operation - 1;
+        int operand = constant > 0 ? operandStart(code, constant - 1) : -1;
+        int operandEnd = constant - 1;
+
+        if (operand < 0) {
+            operand = operandStart(code, operation - 1);
+            operandEnd = operation - 1;
+            constant = operand > 0 ? constantStart(code, operand - 1) : -1;
+            constantEnd = operand - 1;
+        }
+
+        if (operand < 0 || constant < 0)
+            return false;
+
+        // 0, 1 and -1 are identities, and -32768 can't be negated
+        int value = constantValue(code, constant, constantEnd);
+        if (Math.abs(value) < 2 || value == Short.MIN_VALUE)
+            return false;
+
+        int simple = operand == operandEnd && code.getOpcode(operand) == VMCode.Opcode.PUSH ? operand : -1;
+        VMCode binary = multiplication(code, simple, binaryDigits(Math.abs(value)), value < 0);
+        VMCode signed = multiplication(code, simple, signedDigits(Math.abs(value)), value < 0);
+        VMCode chain = cycles(signed) < cycles(binary) ? signed : binary;
+
+        int callCycles = MULTIPLY_CYCLES;
+        for (int i = constant; i <= constantEnd; i++)
+            callCycles += cycles(code, i);
+
+        if (cycles(chain) >= callCycles)
+            return false;
+
+        code.truncate(operation);
+        if (constantEnd == operation - 1) {
+            code.truncate(constant);
+        } else {
+            for (int i = constant; i <= constantEnd; i++)
+                code.remove(constant);
+        }
+
+        for (int i = 0; i < chain.getSize(); i++)
+            code.add(chain, i);
+        return true;
+    }
+
+    /**
+     * Build the additions that multiply the value on top of the stack by a constant. The value is
+     * pushed again if it is a single push, otherwise it is kept in temp 1, and the running product
+     * is doubled by copying it through temp 2.
+     * @param code the code holding the value.
+     * @param simple the index of the push that is the value, or -1 if it isn't a single push.
+     * @param digits the digits of the constant, highest first, each -1, 0 or 1 with the highest 1.
+     * @param negative whether the constant is negative.
+     * @return the instructions that follow the value.
+     */
+    private static VMCode multiplication(VMCode code, int simple, int[] digits, boolean negative) {
+        VMCode chain = new VMCode();
+        boolean kept = simple >= 0;
+        boolean product = false;
+
+        for (int i = 1; i < digits.length; i++) {
+            if (product) {
+                chain.pop(VMCode.Segment.TEMP, 2);
+                chain.push(VMCode.Segment.TEMP, 2);
+                chain.push(VMCode.Segment.TEMP, 2);
+            } else {
+                if (!kept) {
+                    chain.pop(VMCode.Segment.TEMP, 1);
+                    chain.push(VMCode.Segment.TEMP, 1);
+                    kept = true;
+                }
+                pushOperand(chain, code, simple);
+                product = true;
+            }
+            chain.add(VMCode.Opcode.ADD);
+
+            if (digits[i] != 0) {
+                pushOperand(chain, code, simple);
+                chain.add(digits[i] > 0 ? VMCode.Opcode.ADD : VMCode.Opcode.SUB);
+            }
+        }
+
+        if (negative)
+            chain.add(VMCode.Opcode.NEG);
+        return chain;
+    }
+
+    /**
+     * Add a push of the value being multiplied.
+     * @param chain the instructions being built.
+     * @param code the code holding the value.
+     * @param simple the index of the push that is the value, or -1 if it is kept in temp 1.
+     */
+    private static void pushOperand(VMCode chain, VMCode code, int simple) {
+        if (simple >= 0)
+            chain.add(code, simple);
+        else
+            chain.push(VMCode.Segment.TEMP, 1);
+    }
+
+    /**
+     * Remove a goto that is followed by the label it jumps to, when the label is at the end of the code.
+     * @param code the code being rewritten.
+     * @return whether a goto was removed.
+     */
+    private boolean removeJumpToNext(VMCode code) {
+        int label = code.getSize() - 1;
+        int jump = label - 1;
+        while (jump >= 0 && code.getOpcode(jump) == VMCode.Opcode.LABEL)
+            jump--;
+
+        if (jump < 0 || code.getOpcode(jump) != VMCode.Opcode.GOTO || !isSameLabel(code, jump, label))
+            return false;
+
+        code.remove(jump);
+        return true;
+    }
+
+    /**
+     * Replace 'if-goto A; goto B; label A' at the end of the code with 'not; if-goto B; label A',
+     * when the condition is true or false.
+     * @param code the code being rewritten.
+     * @return whether the branch was replaced.
+     */
+    private boolean invertBranch(VMCode code) {
+        int size = code.getSize();
+        if (size < 4 || code.getOpcode(size - 2) != VMCode.Opcode.GOTO || code.getOpcode(size - 3) != VMCode.Opcode.IF_GOTO
+                || !isSameLabel(code, size - 3, size - 1) || !isBoolean(code, size - 4))
+            return false;
+
+        VMCode.Label target = code.getLabel(size - 2);
+        int targetNumber = code.getValue(size - 2);
+        VMCode.Label label = code.getLabel(size - 1);
+        int labelNumber = code.getValue(size - 1);
+
+        code.truncate(size - 3);
+        code.add(VMCode.Opcode.NOT);
+        this.reduce(code);
+        code.label(VMCode.Opcode.IF_GOTO, target, targetNumber);
+        this.reduce(code);
+        code.label(VMCode.Opcode.LABEL, label, labelNumber);
+        this.reduce(code);
+        return true;
+    }
+
+    /**
+     * Replace 'push x; pop temp 0; pop pointer 1; push temp 0; pop that 0' at the end of the code
+     * with 'pop pointer 1; push x; pop that 0', when x isn't read through the pointer being set.
+     * @param code the code being rewritten.
+     * @return whether the array store was replaced.
+     */
+    private boolean reorderArrayStore(VMCode code) {
+        int size = code.getSize();
+        int value = size - 5;
+        if (value < 0 || !isPop(code, size - 1, VMCode.Segment.THAT, 0) || !isPush(code, size - 2, VMCode.Segment.TEMP)
+                || code.getValue(size - 2) != 0 || !isPop(code, size - 3, VMCode.Segment.POINTER, 1)
+                || !isPop(code, size - 4, VMCode.Segment.TEMP, 0) || code.getOpcode(value) != VMCode.Opcode.PUSH)
+            return false;
+
+        VMCode.Segment segment = code.getSegment(value);
+        int index = code.getValue(value);
+        if (segment == VMCode.Segment.THAT || (segment == VMCode.Segment.POINTER && index == 1))
+            return false;
+
+        code.truncate(value);
+        code.pop(VMCode.Segment.POINTER, 1);
+        code.push(segment, index);
+        code.pop(VMCode.Segment.THAT, 0);
+        return true;
+    }
+
+    /**
+     * Copy vm code without the labels that no goto or if-goto jumps to.
+     * @param code the vm code.
+     * @return the copy.
+     */
+    private VMCode removeUnusedLabels(VMCode code) {
+        HashSet<Long> targets = new HashSet<>();
+        for (int i = 0; i < code.getSize(); i++) {
+            if (code.getOpcode(i) == VMCode.Opcode.GOTO || code.getOpcode(i) == VMCode.Opcode.IF_GOTO)
+                targets.add(labelKey(code, i));
+        }
+
+        VMCode used = new VMCode();
+        for (int i = 0; i < code.getSize(); i++) {
+            if (code.getOpcode(i) != VMCode.Opcode.LABEL || targets.contains(labelKey(code, i)))
+                used.add(code, i);
+        }
+
+        return used;
+    }
+
+    /**
+     * Rotate every while loop whose condition is true or false, so that
+     * 'label WHILE_EXP; condition; not; if-goto WHILE_END; body; goto WHILE_EXP; label WHILE_END'
+     * becomes 'goto WHILE_EXP; label WHILE_BODY; body; label WHILE_EXP; condition; if-goto WHILE_BODY'.
+     * @param code the vm code.
+     * @return the vm code with its loops rotated.
+     */
+    private VMCode invertLoops(VMCode code) {
+        // A loop that is rotated keeps the instructions before it where they were
+        for (int start = 0; start < code.getSize(); start++) {
+            if (code.getOpcode(start) == VMCode.Opcode.LABEL && code.getLabel(start) == VMCode.Label.WHILE_EXP) {
+                VMCode inverted = this.invertLoop(code, start);
+                if (inverted != null)
+                    code = inverted;
+            }
+        }
+
+        return code;
+    }
+
+    /**
+     * Rotate a while loop.
+     * @param code the vm code.
+     * @param start the index of the label that starts the loop.
+     * @return the vm code with the loop rotated, or null if it can't be.
+     */
+    private VMCode invertLoop(VMCode code, int start) {
+        int number = code.getValue(start);
+        int exit = -1;
+        int jump = -1;
+
+        for (int i = start + 1; i < code.getSize() - 1 && jump < 0; i++) {
+            if (exit < 0 && isLabel(code, i, VMCode.Opcode.IF_GOTO, VMCode.Label.WHILE_END, number))
+                exit = i;
+            else if (isLabel(code, i, VMCode.Opcode.GOTO, VMCode.Label.WHILE_EXP, number)
+                    && isLabel(code, i + 1, VMCode.Opcode.LABEL, VMCode.Label.WHILE_END, number))
+                jump = i;
+        }
+
+        if (exit < 0 || jump < 0 || exit - 2 <= start || code.getOpcode(exit - 1) != VMCode.Opcode.NOT || !isBoolean(code, exit - 2))
+            return null;
+
+        VMCode inverted = new VMCode();
+        for (int i = 0; i < start; i++)
+            inverted.add(code, i);
+
+        inverted.label(VMCode.Opcode.GOTO, VMCode.Label.WHILE_EXP, number);
+        inverted.label(VMCode.Opcode.LABEL, VMCode.Label.WHILE_BODY, number);
+        for (int i = exit + 1; i < jump; i++)
+            inverted.add(code, i);
+
+        // The condition is tested without the 'not', jumping back while it is true
+        inverted.label(VMCode.Opcode.LABEL, VMCode.Label.WHILE_EXP, number);
+        for (int i = start + 1; i < exit - 1; i++)
+            inverted.add(code, i);
+        inverted.label(VMCode.Opcode.IF_GOTO, VMCode.Label.WHILE_BODY, number);
+
+        for (int i = jump + 2; i < code.getSize(); i++)
+            inverted.add(code, i);
+
+        return inverted;
+    }
+
+    /**
+     * Check whether the value an instruction leaves on the stack is known to be true (-1) or false (0).
+     * @param code the vm code.
+     * @param instruction the index of the last instruction of the value.
+     * @return whether the value is true or false.
+     */
+    private static boolean isBoolean(VMCode code, int instruction) {
+        while (instruction >= 0 && code.getOpcode(instruction) == VMCode.Opcode.NOT)
+            instruction--;
+
+        if (instruction < 0)
+            return false;
+
+        switch (code.getOpcode(instruction)) {
+            case EQ:
+            case GT:
+            case LT:
+                return true;
+            case PUSH:
+                return code.getSegment(instruction) == VMCode.Segment.CONSTANT && code.getValue(instruction) == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Find the start of the constant that ends at an instruction: a 'push constant',
+     * optionally followed by a 'neg' or 'not'.
+     * @param code the vm code.
+     * @param end the index of the last instruction of the constant.
+     * @return the index of its first instruction, or -1 if it isn't a constant.
+     */
+    private static int constantStart(VMCode code, int end) {
+        if (end < 0)
+            return -1;
+        if (isPush(code, end, VMCode.Segment.CONSTANT))
+            return end;
+        if (end > 0 && (code.getOpcode(end) == VMCode.Opcode.NEG || code.getOpcode(end) == VMCode.Opcode.NOT)
+                && isPush(code, end - 1, VMCode.Segment.CONSTANT))
+            return end - 1;
+        return -1;
+    }
+
+    /**
+     * Get the value of a constant.
+     * @param code the vm code.
+     * @param start the index of the push of the constant.
+     * @param end the index of the last instruction of the constant.
+     * @return the value, from -32768 to 32767.
+     */
+    private static int constantValue(VMCode code, int start, int end) {
+        int value = code.getValue(start);
+        if (end == start)
+            return value;
+
+        return code.getOpcode(end) == VMCode.Opcode.NEG ? -value : ~value;
+    }
+
+    /**
+     * Get the number of instructions that pushConstant writes for a value.
+     * @param value the value.
+     * @return the number of instructions.
+     */
+    private static int constantLength(int value) {
+        return value >= 0 ? 1 : 2;
+    }
+
+    /**
+     * Add the instructions that push a constant. True is written as 'push constant 0; not',
+     * as the code generator does, and -32768, which can't be negated, as the not of 32767.
+     * @param code the vm code.
+     * @param value the value, from -32768 to 32767.
+     */
+    private static void pushConstant(VMCode code, int value) {
+        if (value >= 0) {
+            code.push(VMCode.Segment.CONSTANT, value);
+        } else if (value == -1 || value == Short.MIN_VALUE) {
+            code.push(VMCode.Segment.CONSTANT, ~value);
+            code.add(VMCode.Opcode.NOT);
+        } else {
+            code.push(VMCode.Segment.CONSTANT, -value);
+            code.add(VMCode.Opcode.NEG);
+        }
+    }
+
+    /**
+     * Find the start of the expression whose value is left on the stack by an instruction,
+     * by walking back until the instructions have pushed one value.
+     * @param code the vm code.
+     * @param end the index of the last instruction of the expression.
+     * @return the index of its first instruction, or -1 if it isn't a whole expression.
+     */
+    private static int operandStart(VMCode code, int end) {
+        int pushed = 0;
+
+        for (int i = end; i >= 0; i--) {
+            switch (code.getOpcode(i)) {
+                case PUSH:
+                    // An array element is read by setting that, which needs the address below it
+                    if (code.getSegment(i) == VMCode.Segment.THAT) {
+                        if (i == 0 || !isPop(code, i - 1, VMCode.Segment.POINTER, 1))
+                            return -1;
+                        i--;
+                    } else {
+                        pushed++;
+                    }
+                    break;
+                case ADD:
+                case SUB:
+                case AND:
+                case OR:
+                case EQ:
+                case GT:
+                case LT:
+                    pushed--;
+                    break;
+                case NEG:
+                case NOT:
+                    break;
+                case CALL:
+                    pushed += 1 - code.getValue(i);
+                    break;
+                default:
+                    return -1;
+            }
+
+            if (pushed == 1)
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the binary digits of a number.
+     * @param value the number, which is positive.
+     * @return the digits, highest first.
+     */
+    private static int[] binaryDigits(int value) {
+        int[] digits = new int[32 - Integer.numberOfLeadingZeros(value)];
+        for (int i = digits.length - 1; i >= 0; i--, value >>= 1)
+            digits[i] = value & 1;
+        return digits;
+    }
+
+    /**
+     * Get the non-adjacent form of a number, whose digits are -1, 0 or 1 with no two
+     * adjacent digits both non-zero, so it has as few non-zero digits as possible.
+     * For example 31 is 1 0 0 0 0 -1, or 32 - 1.
+     * @param value the number, which is positive.
+     * @return the digits, highest first.
+     */
+    private static int[] signedDigits(int value) {
+        int[] reversed = new int[33];
+        int count = 0;
+
+        for (; value != 0; value >>= 1) {
+            int digit = (value & 1) == 0 ? 0 : 2 - (value & 3);
+            value -= digit;
+            reversed[count++] = digit;
+        }
+
+        int[] digits = new int[count];
+        for (int i = 0; i < count; i++)
+            digits[i] = reversed[count - 1 - i];
+        return digits;
+    }
+
+    /**
+     * Estimate the number of Hack instructions that a vm translator writes for some vm code.
+     * @param code the vm code.
+     * @return the estimated number of cycles it takes to run once.
+     */
+    private static int cycles(VMCode code) {
+        int cycles = 0;
+        for (int i = 0; i < code.getSize(); i++)
+            cycles += cycles(code, i);
+        return cycles;
+    }
+
+    /**
+     * Estimate the number of Hack instructions that a vm translator writes for an instruction.
+     * Pushing or popping a segment reached through a base pointer takes longer than a constant,
+     * or a temp, static or pointer, whose address is known.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @return the estimated number of cycles it takes to run.
+     */
+    private static int cycles(VMCode code, int instruction) {
+        switch (code.getOpcode(instruction)) {
+            case PUSH:
+                switch (code.getSegment(instruction)) {
+                    case LOCAL:
+                    case ARGUMENT:
+                    case THIS:
+                    case THAT:
+                        return 11;
+                    default:
+                        return 7;
+                }
+            case POP:
+                switch (code.getSegment(instruction)) {
+                    case LOCAL:
+                    case ARGUMENT:
+                    case THIS:
+                    case THAT:
+                        return 13;
+                    default:
+                        return 6;
+                }
+            case NEG:
+            case NOT:
+                return 3;
+            case CALL:
+                return isCall(code, instruction, MULTIPLY) ? MULTIPLY_CYCLES : CALL_CYCLES;
+            default:
+                return 5;
+        }
+    }
+
+    /**
+     * Check whether an instruction is a call of a subroutine with two arguments.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @param name the full name of the subroutine.
+     * @return whether it is a call of the subroutine.
+     */
+    private static boolean isCall(VMCode code, int instruction, String name) {
+        return code.getOpcode(instruction) == VMCode.Opcode.CALL && code.getValue(instruction) == 2
+                && name.equals(code.getName(instruction));
+    }
+
+    /**
+     * Check whether an instruction is a push from a segment.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @param segment the segment.
+     * @return whether it is a push from the segment.
+     */
+    private static boolean isPush(VMCode code, int instruction, VMCode.Segment segment) {
+        return code.getOpcode(instruction) == VMCode.Opcode.PUSH && code.getSegment(instruction) == segment;
+    }
+
+    /**
+     * Check whether an instruction is a pop to a place in a segment.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @param segment the segment.
+     * @param index the index in the segment.
+     * @return whether it is a pop to the place.
+     */
+    private static boolean isPop(VMCode code, int instruction, VMCode.Segment segment, int index) {
+        return code.getOpcode(instruction) == VMCode.Opcode.POP && code.getSegment(instruction) == segment
+                && code.getValue(instruction) == index;
+    }
+
+    /**
+     * Check whether an instruction is a label, goto or if-goto of a particular label.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @param opcode the command.
+     * @param label the kind of label.
+     * @param number the number of the label.
+     * @return whether the instruction matches.
+     */
+    private static boolean isLabel(VMCode code, int instruction, VMCode.Opcode opcode, VMCode.Label label, int number) {
+        return code.getOpcode(instruction) == opcode && code.getLabel(instruction) == label && code.getValue(instruction) == number;
+    }
+
+    /**
+     * Check whether two label, goto or if-goto instructions name the same label.
+     * @param code the vm code.
+     * @param first the index of the first instruction.
+     * @param second the index of the second instruction.
+     * @return whether they name the same label.
+     */
+    private static boolean isSameLabel(VMCode code, int first, int second) {
+        return code.getLabel(first) == code.getLabel(second) && code.getValue(first) == code.getValue(second);
+    }
+
+    /**
+     * Get a key that identifies the label named by a label, goto or if-goto instruction.
+     * @param code the vm code.
+     * @param instruction the index of the instruction.
+     * @return the key.
+     */
+    private static long labelKey(VMCode code, int instruction) {
+        return (long) code.getValue(instruction) * VMCode.Label.values().length + code.getLabel(instruction).ordinal();
+    }
+}
@@ -0,0 +1,273 @@
+package com;
+
+import java.util.Arrays;
+
+/**
+ * The scope table finds the symbol that a name refers to at the current point
+ * of the class being analysed. Rather than a symbol table for every block that
+ * is searched up through its parents, every name in scope is held in a single
+ * open addressed hash table, so a name is found with one lookup however deeply
+ * the code is nested.
+ *
+ * Each declaration is pushed onto a stack of entries, and the hash table holds
+ * the newest entry for each name, which links to the entry it shadows. Entering
+ * a class, subroutine or block pushes a scope marker, and leaving it pops every
+ * entry declared since, restoring the entries they shadowed.
+ *
+ * The members of the class are added to its symbol table, which numbers them.
+ * The arguments and locals of the open subroutine are numbered by counters that
+ * start again for each subroutine, and a block numbers its own locals from 0, in
+ * the same way as when each if and while statement had a symbol table of its own.
+ */
+public class ScopeTable {
+    private static final int NONE = -1;                     // Index of an entry that doesn't exist.
+
+    private String[] names;                                 // The name held in each slot of the hash table, null if empty.
+    private int[] newest;                                   // The newest entry for the name in each slot, NONE if out of scope.
+    private int nameCount;                                  // The number of slots holding a name.
+
+    private Symbol[] symbols;                               // The symbol of each entry.
+    private int[] slots;                                    // The slot of the name of each entry.
+    private int[] shadowed;                                 // The entry each entry shadows, NONE if there isn't one.
+    private int[] entryScopes;                              // The scope each entry was declared in.
+    private int entryCount;                                 // The number of entries.
+
+    private int[] scopeStarts;                              // The first entry of each scope.
+    private SymbolTable[] tables;                           // The symbol table of each scope, null unless it is the class.
+    private int[] blockCounts;                              // The number of symbols declared in each block.
+    private int scopeCount;                                 // The number of scopes that are open.
+
+    private int subroutineScope;                            // The scope of the open subroutine, NONE if there isn't one.
+    private int argumentCount;                              // The number of arguments of the open subroutine, including 'this'.
+    private int localCount;                                 // The number of locals declared directly in the open subroutine.
+
+    /**
+     * Create an empty scope table.
+     */
+    public ScopeTable() {
+        this.names = new String[64];
+        this.newest = new int[64];
+        this.symbols = new Symbol[32];
+        this.slots = new int[32];
+        this.shadowed = new int[32];
+        this.entryScopes = new int[32];
+        this.scopeStarts = new int[8];
+        this.tables = new SymbolTable[8];
+        this.blockCounts = new int[8];
+        this.subroutineScope = NONE;
+    }
+
+    /**
+     * Getters.
+     */
+    public int getLocalCount() { return this.localCount; }
+
+    /**
+     * Open the scope of a class, whose declarations are added to its symbol table.
+     * The symbols already in the table are brought into scope.
+     * @param table the symbol table of the class.
+     */
+    public void push(SymbolTable table) {
+        this.openScope(table);
+
+        for (Symbol symbol : table.getSymbols())
+            this.add(symbol);
+    }
+
+    /**
+     * Open the scope of a subroutine, whose arguments and locals are numbered from 0.
+     * A method takes 'this' as its first argument, and a constructor has 'this' at
+     * index 0 without taking it as an argument.
+     * @param subroutine the symbol of the subroutine.
+     * @param className the name of the class that the subroutine belongs to.
+     */
+    public void pushSubroutine(Symbol subroutine, String className) {
+        this.openScope(null);
+        this.subroutineScope = this.scopeCount - 1;
+        this.argumentCount = 0;
+        this.localCount = 0;
+
+        if (subroutine.getKind() == Symbol.Kind.METHOD)
+            this.add(new Symbol("this", className, Symbol.Kind.POINTER, this.argumentCount++, true));
+        else if (subroutine.getKind() == Symbol.Kind.CONSTRUCTOR)
+            this.add(new Symbol("this", className, Symbol.Kind.POINTER, 0, true));
+    }
+
+    /**
+     * Open the scope of a block.
+     */
+    public void push() {
+        this.openScope(null);
+    }
+
+    /**
+     * Close the innermost scope, taking every symbol declared in it out of scope.
+     */
+    public void pop() {
+        int start = this.scopeStarts[--this.scopeCount];
+
+        if (this.scopeCount == this.subroutineScope)
+            this.subroutineScope = NONE;
+
+        while (this.entryCount > start) {
+            int entry = --this.entryCount;
+            this.newest[this.slots[entry]] = this.shadowed[entry];
+            this.symbols[entry] = null;
+        }
+    }
+
+    /**
+     * Declare a symbol in the innermost scope.
+     * @param name the name of the symbol (identifier).
+     * @param type the type of the symbol (i.e. the object/type that it returns or stores).
+     * @param kind the kind of symbol (i.e. var, argument, static, field, subroutine).
+     * @param initialized whether or not the symbol has been initialized.
+     * @return the symbol.
+     */
+    public Symbol declare(String name, String type, Symbol.Kind kind, boolean initialized) {
+        int scope = this.scopeCount - 1;
+        SymbolTable table = this.tables[scope];
+        Symbol symbol;
+
+        if (table != null)
+            symbol = table.addSymbol(name, type, kind, initialized);
+        else if (scope == this.subroutineScope)
+            symbol = new Symbol(name, type, kind, kind == Symbol.Kind.LOCAL ? this.localCount++ : this.argumentCount++, initialized);
+        else
+            symbol = new Symbol(name, type, kind, this.blockCounts[scope]++, initialized);
+
+        this.add(symbol);
+        return symbol;
+    }
+
+    /**
+     * Find the symbol that a name refers to.
+     * @param name the name of the symbol.
+     * @return the symbol, or null if the name isn't in scope.
+     */
+    public Symbol find(String name) {
+        int entry = this.newestEntry(name);
+        return entry != NONE ? this.symbols[entry] : null;
+    }
+
+    /**
+     * Check whether a name is in scope.
+     * @param name the name of the symbol.
+     * @return whether the name is in scope.
+     */
+    public boolean contains(String name) {
+        return this.newestEntry(name) != NONE;
+    }
+
+    /**
+     * Check whether a name has been declared in the current subroutine, or in the
+     * class if no subroutine is open.
+     * @param name the name of the symbol.
+     * @return whether the name has been declared.
+     */
+    public boolean containsInSubroutine(String name) {
+        int entry = this.newestEntry(name);
+        return entry != NONE && this.entryScopes[entry] >= Math.min(this.scopeCount - 1, 1);
+    }
+
+    /**
+     * Find the newest entry for a name.
+     * @param name the name.
+     * @return the entry, or NONE if the name isn't in scope.
+     */
+    private int newestEntry(String name) {
+        int slot = this.slot(name);
+        return this.names[slot] != null ? this.newest[slot] : NONE;
+    }
+
+    /**
+     * Push a scope marker.
+     * @param table the symbol table of the scope, null unless it is the class.
+     */
+    private void openScope(SymbolTable table) {
+        if (this.scopeCount == this.scopeStarts.length) {
+            this.scopeStarts = Arrays.copyOf(this.scopeStarts, this.scopeCount * 2);
+            this.tables = Arrays.copyOf(this.tables, this.scopeCount * 2);
+            this.blockCounts = Arrays.copyOf(this.blockCounts, this.scopeCount * 2);
+        }
+
+        this.scopeStarts[this.scopeCount] = this.entryCount;
+        this.tables[this.scopeCount] = table;
+        this.blockCounts[this.scopeCount] = 0;
+        this.scopeCount++;
+    }
+
+    /**
+     * Bring a symbol into the innermost scope, shadowing any symbol of the same name.
+     * @param symbol the symbol.
+     */
+    private void add(Symbol symbol) {
+        if (this.entryCount == this.symbols.length) {
+            int capacity = this.entryCount * 2;
+            this.symbols = Arrays.copyOf(this.symbols, capacity);
+            this.slots = Arrays.copyOf(this.slots, capacity);
+            this.shadowed = Arrays.copyOf(this.shadowed, capacity);
+            this.entryScopes = Arrays.copyOf(this.entryScopes, capacity);
+        }
+
+        int slot = this.slot(symbol.getName());
+
+        // A name keeps its slot once it has one, so only a new name can fill the table
+        if (this.names[slot] == null) {
+            this.names[slot] = symbol.getName();
+            this.newest[slot] = NONE;
+
+            if (++this.nameCount * 2 > this.names.length) {
+                this.grow();
+                slot = this.slot(symbol.getName());
+            }
+        }
+
+        int entry = this.entryCount++;
+        this.symbols[entry] = symbol;
+        this.slots[entry] = slot;
+        this.shadowed[entry] = this.newest[slot];
+        this.entryScopes[entry] = this.scopeCount - 1;
+        this.newest[slot] = entry;
+    }
+
+    /**
+     * Find the slot that holds a name, or the empty slot it would be put in.
+     * @param name the name.
+     * @return the slot.
+     */
+    private int slot(String name) {
+        int mask = this.names.length - 1;
+        int slot = name.hashCode() & mask;
+
+        while (this.names[slot] != null && !this.names[slot].equals(name))
+            slot = (slot + 1) & mask;
+
+        return slot;
+    }
+
+    /**
+     * Double the capacity of the hash table, moving each name and the entries that refer to its slot.
+     */
+    private void grow() {
+        String[] oldNames = this.names;
+        int[] oldNewest = this.newest;
+        int[] moved = new int[oldNames.length];
+
+        this.names = new String[oldNames.length * 2];
+        this.newest = new int[oldNames.length * 2];
+
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null)
+                continue;
+
+            int slot = this.slot(oldNames[i]);
+            this.names[slot] = oldNames[i];
+            this.newest[slot] = oldNewest[i];
+            moved[i] = slot;
+        }
+
+        for (int entry = 0; entry < this.entryCount; entry++)
+            this.slots[entry] = moved[this.slots[entry]];
+    }
+}
@@ -0,0 +1,862 @@
+package com;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * The semantic analyser walks the abstract syntax tree of a class, building
+ * its symbol tables and checking that the identifiers, types, arguments and
+ * return statements make sense. The identifiers in the tree are resolved
+ * against the symbol tables as they are found, so the code generator knows
+ * what each of them refers to.
+ */
+public class SemanticAnalyser {
+    private final boolean SEMANTIC_ANALYSIS = true;         // If true perform the semantic analysis checks on the source code.
+
+    private final Ast ast;                                  // The tree being analysed.
+    private final PrintStream err;                          // Stream that errors and warnings are written to.
+
+    private SymbolTable globalSt;                           // The symbol table for the class.
+    private Symbol subroutineSymbol;                        // The symbol of the current subroutine.
+    private ScopeTable scopes;                              // The names in scope at the current point of the class.
+
+    private final LinkedList<Identifier> unresolvedIdentifiers; // Identifiers that couldn't be resolved and need to be checked at the end.
+    private boolean semanticStatus;                         // The current status of the semantic checks. If an error occurs this equals false.
+    private final ArrayList<Diagnostic> diagnostics;        // The semantic errors and warnings found so far.
+
+    private int[] expressions;                              // The expressions that are still to be analysed.
+    private int expressionCount;                            // The number of expressions on the stack.
+
+    /**
+     * Create a semantic analyser.
+     * @param ast the tree to analyse.
+     * @param err the stream that errors and warnings are written to.
+     */
+    public SemanticAnalyser(Ast ast, PrintStream err) {
+        this.ast = ast;
+        this.err = err;
+        this.unresolvedIdentifiers = new LinkedList<>();
+        this.semanticStatus = true;
+        this.diagnostics = new ArrayList<>();
+        this.expressions = new int[16];
+    }
+
+    /**
+     * Getters.
+     */
+    public boolean getSemanticStatus() { return this.semanticStatus; }
+    public ArrayList<Diagnostic> getDiagnostics() { return this.diagnostics; }
+    public SymbolTable getSymbolTable() { return this.globalSt; }
+    public LinkedList<Identifier> getUnresolvedIdentifiers() { return this.unresolvedIdentifiers; }
+
+    /**
+     * Analyse a class.
+     * @param classDeclaration the class node.
+     * @throws ParserException thrown if a subroutine is declared twice, which stops the compilation.
+     */
+    public void analyse(int classDeclaration) throws ParserException {
+        String name = this.ast.getString(classDeclaration);
+        Symbol rootSymbol = new Symbol(name, name, Symbol.Kind.CLASS, 0, true);
+        this.globalSt = new SymbolTable(rootSymbol);
+        this.scopes = new ScopeTable();
+        this.scopes.push(this.globalSt);
+
+        for (int member = this.ast.getFirstChild(classDeclaration); member != Ast.NONE; member = this.ast.getNextSibling(member)) {
+            switch (this.ast.getKind(member)) {
+                case STATIC:
+                case FIELD:
+                    declareVariables(member, false);
+                    break;
+                default:
+                    analyseSubroutine(member);
+            }
+        }
+
+        // SEMANTIC ANALYSIS - Check to make sure that only one class has been created
+        if (!this.ast.hasFlag(classDeclaration, Ast.END_OF_FILE))
+            semanticError(this.ast.getExtra(classDeclaration), "Expected end of file, only one class per file.");
+
+        // Resolve unresolved identifiers
+        resolveIdentifiers(this.ast.getExtra(classDeclaration));
+    }
+
+    /**
+     * Handles outputting a semantic error to the terminal.
+     * @param lineNumber the line number the error occurred at.
+     * @param msg the message that will be output, providing information to the user.
+     */
+    private void semanticError(int lineNumber, String msg) {
+        if (SEMANTIC_ANALYSIS) {
+            this.err.println(CommandLineText.ANSI_RED + "[Semantic error] Line " + lineNumber + ": " + msg + CommandLineText.ANSI_RESET);
+            this.diagnostics.add(new Diagnostic(Diagnostic.Severity.ERROR, Diagnostic.Stage.SEMANTIC, lineNumber, msg));
+            semanticStatus = false;
+        }
+    }
+
+    /**
+     * Outputs a semantic warning.
+     * Note: This will not stop the VMWriter from outputting the vm code.
+     * @param lineNumber the line number the error occurred at.
+     * @param msg the message that will be output, providing the information to the user.
+     */
+    private void semanticWarning(int lineNumber, String msg) {
+        if (SEMANTIC_ANALYSIS) {
+            this.err.println(CommandLineText.ANSI_YELLOW + "[Semantic warning] Line " + lineNumber + ": " + msg + CommandLineText.ANSI_RESET);
+            this.diagnostics.add(new Diagnostic(Diagnostic.Severity.WARNING, Diagnostic.Stage.SEMANTIC, lineNumber, msg));
+        }
+    }
+
+    /**
+     * Resolve identifier that are yet to be resolved after the class has been analysed.
+     * Note: this happens when a function is used before it has been declared or if a function
+     * is part of another class.
+     * @param lineNumber the line number that argument errors are reported at.
+     */
+    private void resolveIdentifiers(int lineNumber) {
+        for(Iterator<Identifier> iter = this.unresolvedIdentifiers.iterator(); iter.hasNext(); ) {
+            Identifier id = iter.next();
+
+            if (id.getCIdName().equals(this.globalSt.getName())) {
+                if (!this.globalSt.contains(id.getIdName())) {
+                    semanticError(id.getLineNumber(), "Identifier " + id.getIdName() + " used without previously declaring.");
+                } else {
+                    id.setId(this.globalSt.findSymbol(id.getIdName()));
+                    checkSubroutineArguments(id, id.getArguments(), lineNumber);
+                }
+
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Check the identifiers that refer to other classes against the interface of every class in the program.
+     * Note: this is only done when the whole program is being compiled, otherwise the identifiers
+     * are left unresolved.
+     * @param index the interface of every class in the program.
+     */
+    public void resolveClassReferences(ClassIndex index) {
+        for (Identifier id : this.unresolvedIdentifiers) {
+            // SEMANTIC ANALYSIS - Check that the class exists
+            if (!index.containsClass(id.getCIdName())) {
+                semanticError(id.getLineNumber(), "Class " + id.getCIdName() + " used without previously declaring.");
+                continue;
+            }
+
+            // SEMANTIC ANALYSIS - Check that the subroutine exists
+            ClassIndex.Subroutine subroutine = index.findSubroutine(id.getCIdName(), id.getIdName());
+            if (subroutine == null) {
+                semanticError(id.getLineNumber(), "Identifier " + id + " used without previously declaring.");
+                continue;
+            }
+
+            // Only subroutine calls have arguments
+            LinkedList<String> paramTypes = id.getArguments();
+            if (paramTypes == null)
+                continue;
+
+            // SEMANTIC ANALYSIS - Check that methods are called on an object, and other subroutines on their class
+            if (subroutine.getKind() == Symbol.Kind.METHOD && id.getCId() == null)
+                semanticError(id.getLineNumber(), "Method " + id + " called without an object.");
+            else if (subroutine.getKind() != Symbol.Kind.METHOD && id.getCId() != null)
+                semanticError(id.getLineNumber(), "Subroutine " + id + " called on an object, but is not a method.");
+
+            // SEMANTIC ANALYSIS - Check that the number of arguments match
+            if (paramTypes.size() != subroutine.getArgumentTypes().size())
+                semanticError(id.getLineNumber(), "The number of arguments for the function call doesn't match that of the declaration.");
+
+            // SEMANTIC ANALYSIS - Check that arguments match.
+            Iterator<String> it1 = paramTypes.iterator();
+            Iterator<String> it2 = subroutine.getArgumentTypes().iterator();
+            while (it1.hasNext() && it2.hasNext()) {
+                String currentType = it1.next();
+                String declarType = it2.next();
+
+                if (!isCompatibleArgument(currentType, declarType))
+                    semanticError(id.getLineNumber(), "The type: " + currentType + " doesn't match " + declarType + " used in the function declaration.");
+            }
+        }
+    }
+
+    /**
+     * Check whether an argument can be passed to a subroutine of another class. As well as matching
+     * types, anything can be passed as an int, an int can be passed as anything, any object can be
+     * passed as an Array and null can be passed as any object. Arguments whose type isn't known are allowed.
+     * @param type the type of the argument.
+     * @param declarType the type of the parameter.
+     * @return true if the argument can be passed.
+     */
+    private static boolean isCompatibleArgument(String type, String declarType) {
+        boolean isObject = !type.equals("char") && !type.equals("boolean") && !type.equals("int");
+        boolean declarIsObject = !declarType.equals("char") && !declarType.equals("boolean") && !declarType.equals("int");
+
+        return type.equals(declarType) || type.equals("") || type.equals("int") || declarType.equals("int")
+                || (declarIsObject && type.equals("null")) || (declarType.equals("Array") && isObject);
+    }
+
+    /**
+     * Declare the variables of a variable declaration in the current scope.
+     * @param declaration the declaration node.
+     * @param isInitialized whether the variables have been initialized.
+     */
+    private void declareVariables(int declaration, boolean isInitialized) {
+        String type = this.ast.getString(declaration);
+        Symbol.Kind kind = symbolKind(this.ast.getKind(declaration));
+        int first = this.ast.getFirstChild(declaration);
+
+        // SEMANTIC ANALYSIS - Check for redeclaration
+        if (this.scopes.containsInSubroutine(this.ast.getString(first)))
+            semanticError(this.ast.getExtra(declaration), "Redeclaration of identifier: " + this.ast.getString(first));
+
+        for (int name = first; name != Ast.NONE; name = this.ast.getNextSibling(name))
+            this.scopes.declare(this.ast.getString(name), type, kind, isInitialized);
+    }
+
+    /**
+     * Get the kind of symbol that a declaration declares.
+     * @param kind the kind of declaration node.
+     * @return the kind of symbol.
+     */
+    private static Symbol.Kind symbolKind(Ast.Kind kind) {
+        switch (kind) {
+            case STATIC:
+                return Symbol.Kind.STATIC;
+            case FIELD:
+                return Symbol.Kind.FIELD;
+            case PARAMETER:
+                return Symbol.Kind.ARGUMENT;
+            case LOCAL:
+                return Symbol.Kind.LOCAL;
+            case CONSTRUCTOR:
+                return Symbol.Kind.CONSTRUCTOR;
+            case FUNCTION:
+                return Symbol.Kind.FUNCTION;
+            default:
+                return Symbol.Kind.METHOD;
+        }
+    }
+
+    /**
+     * Analyse a subroutine declaration.
+     * @param subroutine the subroutine node.
+     * @throws ParserException thrown if the subroutine has already been declared.
+     */
+    private void analyseSubroutine(int subroutine) throws ParserException {
+        String name = this.ast.getString(subroutine);
+        int type = this.ast.getFirstChild(subroutine);
+        Symbol symbol = null;
+
+        // Check for redeclaration and add symbol
+        // Note: for some reason jack seems to allow class variables
+        // and subroutines with the same names a work around has
+        // been included for this situation.
+        if (this.globalSt.contains(name)) {
+            boolean isClassVariable = this.globalSt.findSymbol(name).getKind() == Symbol.Kind.FIELD
+                    || this.globalSt.findSymbol(name).getKind() == Symbol.Kind.STATIC;
+
+            if (!isClassVariable)
+                throw new ParserException(this.ast.getLine(subroutine), "Redeclaration of identifier, " + name);
+        } else {
+            symbol = this.scopes.declare(name, this.ast.getString(type), symbolKind(this.ast.getKind(subroutine)), true);
+            this.subroutineSymbol = symbol;
+        }
+
+        // The subroutine has a scope of its own
+        if (symbol != null)
+            this.scopes.pushSubroutine(symbol, this.globalSt.getName());
+        else
+            this.scopes.push();
+
+        // The parameters are followed by the body, and their types are kept to check calls against
+        int node = this.ast.getNextSibling(type);
+        for (; this.ast.getKind(node) == Ast.Kind.PARAMETER; node = this.ast.getNextSibling(node)) {
+            declareVariables(node, true);
+
+            if (symbol != null) {
+                for (int parameter = this.ast.getFirstChild(node); parameter != Ast.NONE; parameter = this.ast.getNextSibling(parameter))
+                    symbol.getArgumentTypes().add(this.ast.getString(node));
+            }
+        }
+
+        boolean returnsOnAllCodePaths = false;
+
+        for (int statement = this.ast.getFirstChild(node); statement != Ast.NONE; statement = this.ast.getNextSibling(statement)) {
+            if (analyseStatement(statement)) {
+                returnsOnAllCodePaths = true;
+
+                // SEMANTIC ANALYSIS - Check for unreachable code
+                if (this.ast.getNextSibling(statement) != Ast.NONE)
+                    semanticWarning(this.ast.getLine(this.ast.getNextSibling(statement)), "Unreachable code will not be executed.");
+            }
+        }
+
+        // The number of locals is only known once the body has been analysed
+        this.ast.setExtra(subroutine, symbol != null ? this.scopes.getLocalCount() : 0);
+
+        // SEMANTIC ANALYSIS - check all code paths return.
+        if (!returnsOnAllCodePaths)
+            semanticError(this.ast.getExtra(node), "Not all code paths return.");
+
+        // Take the parameters and locals out of scope
+        this.scopes.pop();
+    }
+
+    /**
+     * Analyse the statements of an if or while statement.
+     * @param block the block node holding the statements.
+     * @return whether the last statement returns on all code paths.
+     */
+    private boolean analyseStatementBody(int block) {
+        boolean returnsOnAllCodePaths = false;
+
+        for (int statement = this.ast.getFirstChild(block); statement != Ast.NONE; statement = this.ast.getNextSibling(statement))
+            returnsOnAllCodePaths = analyseStatement(statement);
+
+        return returnsOnAllCodePaths;
+    }
+
+    /**
+     * Analyse a statement.
+     * @param statement the statement node.
+     * @return whether the statement returns on all code paths.
+     */
+    private boolean analyseStatement(int statement) {
+        switch (this.ast.getKind(statement)) {
+            case LOCAL:
+                declareVariables(statement, false);
+                return false;
+            case LET:
+                analyseLetStatement(statement);
+                return false;
+            case IF:
+                return analyseIfStatement(statement);
+            case WHILE:
+                analyseWhileStatement(statement);
+                return false;
+            case DO:
+                analyseSubroutineCall(this.ast.getFirstChild(statement));
+                return false;
+            default:
+                analyseReturnStatement(statement);
+                return true;
+        }
+    }
+
+    /**
+     * Analyse a let statement.
+     * @param statement the statement node.
+     */
+    private void analyseLetStatement(int statement) {
+        String expType;
+        int target = this.ast.getFirstChild(statement);
+        int value = this.ast.getNextSibling(target);
+        Identifier identifier = resolveIdentifier(target, true, false);
+
+        // The value follows the array index if there is one
+        if (this.ast.getNextSibling(value) != Ast.NONE) {
+            expType = analyseExpression(value);
+            value = this.ast.getNextSibling(value);
+
+            // SEMANTIC ANALYSIS - Check that an array index evaluates to an integer constant
+            if (identifier != null && !expType.equals("int"))
+                semanticError(identifier.getLineNumber(), "Expression in array indices must always evaluate to an integer.");
+        }
+
+        expType = analyseExpression(value);
+
+        // SEMANTIC ANALYSIS - Check type matches LHS.
+        // Things to note:
+        // - Int can be assigned to any data type
+        // - Any object can be assigned an int (pointer)
+        if (identifier != null) {
+            String idType = identifier.getType();
+
+            boolean idIsObject = !idType.equals("char") && !idType.equals("boolean");
+            boolean expIsObject = !expType.equals("char") && !expType.equals("boolean");
+
+            if (!expType.equals(idType) && !expType.equals("") && !expType.equals("int")
+                    && !(idIsObject && expType.equals("null")) && !(idType.equals("int") && expIsObject))
+                semanticError(identifier.getLineNumber(), "Cannot assign type " + expType + " to " + idType + ".");
+        }
+
+        // Initialize the variable
+        if (identifier != null && identifier.getId() != null)
+            identifier.setInitialized(true);
+
+        // SEMANTIC ANALYSIS - Identifier has not been declared in this scope
+        else if (identifier != null)
+            semanticError(identifier.getLineNumber(), "Identifier " + identifier.getIdName() + " used without previously declaring.");
+    }
+
+    /**
+     * Analyse an if statement.
+     * @param statement the statement node.
+     * @return whether both branches return on all code paths.
+     */
+    private boolean analyseIfStatement(int statement) {
+        boolean returnsOnAllCodePaths;
+        boolean elseReturnsOnAllCodePaths = false;
+        int condition = this.ast.getFirstChild(statement);
+        int statements = this.ast.getNextSibling(condition);
+
+        // The if statement has a scope of its own
+        this.scopes.push();
+
+        analyseExpression(condition);
+        returnsOnAllCodePaths = analyseStatementBody(statements);
+
+        if (this.ast.getNextSibling(statements) != Ast.NONE)
+            elseReturnsOnAllCodePaths = analyseStatementBody(this.ast.getNextSibling(statements));
+
+        // Take the variables declared in the statement out of scope
+        this.scopes.pop();
+
+        return returnsOnAllCodePaths && elseReturnsOnAllCodePaths;
+    }
+
+    /**
+     * Analyse a while statement.
+     * @param statement the statement node.
+     */
+    private void analyseWhileStatement(int statement) {
+        int condition = this.ast.getFirstChild(statement);
+
+        // The while statement has a scope of its own
+        this.scopes.push();
+
+        analyseExpression(condition);
+        analyseStatementBody(this.ast.getNextSibling(condition));
+
+        // Take the variables declared in the statement out of scope
+        this.scopes.pop();
+    }
+
+    /**
+     * Analyse a return statement.
+     * @param statement the statement node.
+     */
+    private void analyseReturnStatement(int statement) {
+        int value = this.ast.getFirstChild(statement);
+        int lineNumber = this.ast.getExtra(statement);
+        String expType = value != Ast.NONE ? analyseExpression(value) : "void";
+
+        // SEMANTIC ANALYSIS - Check return type matches function declaration
+        if (this.subroutineSymbol != null) {
+            String functionType = this.subroutineSymbol.getType();
+
+            if (this.subroutineSymbol.getKind() == Symbol.Kind.CONSTRUCTOR && !this.globalSt.getName().equals(expType)) {
+                semanticError(lineNumber, "A constructor must return 'this'.");
+            } else {
+                boolean functionIsObject = !functionType.equals("char") && !functionType.equals("boolean");
+                boolean expIsObject = !expType.equals("char") && !expType.equals("boolean");
+
+                if ((!expType.equals(functionType) && !expType.equals("int")
+                        && !(functionIsObject && expType.equals("null"))
+                        && !(functionType.equals("int") && (expIsObject)))
+                        || (functionType.equals("void") && !expType.equals("void"))
+                        || (!functionType.equals("void") && expType.equals("void"))) {
+                    semanticError(lineNumber, "Return type " + expType + " not compatible with subroutine return type " +
+                            functionType + ".");
+                }
+            }
+        }
+
+        if (this.subroutineSymbol != null && this.subroutineSymbol.getType().equals("void"))
+            this.ast.setFlag(statement, Ast.VOID);
+    }
+
+    /**
+     * Analyse a subroutine call, deciding which object it is called on.
+     * @param call the call node.
+     * @return the type that the subroutine returns, or "" if it isn't known yet.
+     */
+    private String analyseSubroutineCall(int call) {
+        int name = this.ast.getFirstChild(call);
+        Identifier identifier = resolveIdentifier(name, false, true);
+        String type = identifier != null ? identifier.getType() : "";
+
+        // if method invocation in the same class
+        if (identifier != null && identifier.getCIdName() != null &&
+                (identifier.getCIdName().equals(this.globalSt.getName()) || identifier.getCIdName().equals(""))) {
+            if (this.subroutineSymbol.getKind() == Symbol.Kind.METHOD || this.subroutineSymbol.getKind() == Symbol.Kind.CONSTRUCTOR) {
+                if (identifier.getId() != null && identifier.getCId() != null && this.scopes.contains(identifier.getCId().getName()))
+                    this.ast.setSymbol(call, identifier.getCId());
+                else if (identifier.getCId() != null && identifier.getCId().getName().equals("this"))
+                    this.ast.setFlag(call, Ast.THIS_POINTER);
+            } else {
+                // TODO - try getting it to work with functions that are yet to be declared.
+                // SEMANTIC ANALYSIS - Check if method invocation from function
+                if (identifier.getId() != null && (identifier.getId().getKind() == Symbol.Kind.METHOD
+                        || identifier.getId().getKind() == Symbol.Kind.FUNCTION))
+                    semanticError(identifier.getLineNumber(), "Subroutine called as a method from within a function.");
+            }
+
+        // If method invocation is in another class
+        } else {
+            // Check to see if the first identifier needs to be pushed
+            if (identifier != null && identifier.getCId() != null && this.scopes.contains(identifier.getCId().getName()))
+                this.ast.setSymbol(call, identifier.getCId());
+
+            // Check if the second identifier exists and push it
+            if (identifier != null && identifier.getKind() != null)
+                this.ast.setFlag(call, Ast.PUSHED);
+        }
+
+        // SEMANTIC ANALYSIS - Check that the subroutine arguments match.
+        LinkedList<String> paramList = new LinkedList<>();
+        for (int argument = this.ast.getNextSibling(name); argument != Ast.NONE; argument = this.ast.getNextSibling(argument))
+            paramList.add(analyseExpression(argument));
+        checkSubroutineArguments(identifier, paramList, this.ast.getExtra(call));
+
+        if (identifier != null)
+            this.ast.setValue(call, this.ast.string(identifier.toString()));
+
+        return type;
+    }
+
+    /**
+     * Analyse an expression.
+     * The operators are walked with a stack rather than by recursing, so that long or deeply
+     * nested expressions can't overflow the call stack.
+     * @param expression the expression node.
+     * @return the type of the expression, the type of the last operand for operators.
+     */
+    private String analyseExpression(int expression) {
+        int base = this.expressionCount;
+        String type = "";
+        pushExpression(expression);
+
+        // The operands are analysed from left to right, so the last one analysed gives the type
+        while (this.expressionCount > base) {
+            int node = this.expressions[--this.expressionCount];
+
+            switch (this.ast.getKind(node)) {
+                case BINARY:
+                    pushExpression(this.ast.getNextSibling(this.ast.getFirstChild(node)));
+                    pushExpression(this.ast.getFirstChild(node));
+                    break;
+                case UNARY:
+                    pushExpression(this.ast.getFirstChild(node));
+                    break;
+                default:
+                    type = analyseOperand(node);
+            }
+        }
+
+        return type;
+    }
+
+    /**
+     * Push an expression that is still to be analysed onto the stack.
+     * @param expression the expression node.
+     */
+    private void pushExpression(int expression) {
+        if (this.expressionCount == this.expressions.length)
+            this.expressions = Arrays.copyOf(this.expressions, this.expressionCount * 2);
+
+        this.expressions[this.expressionCount++] = expression;
+    }
+
+    /**
+     * Analyse an operand of an expression.
+     * @param operand the operand node.
+     * @return the type of the operand.
+     */
+    private String analyseOperand(int operand) {
+        switch (this.ast.getKind(operand)) {
+            case INTEGER:
+                String digits = this.ast.getString(operand);
+                int value = 0;
+                for (int i = 0; i < digits.length() && value <= 32767; i++)
+                    value = value * 10 + digits.charAt(i) - '0';
+
+                // SEMANTIC ANALYSIS - Check that the constant fits in a word
+                if (value > 32767)
+                    semanticError(this.ast.getLine(operand), "Integer constant " + digits + " is out of range, the maximum is 32767.");
+                return "int";
+            case STRING:
+                return "String";
+            case KEYWORD:
+                return this.ast.getValue(operand) == Token.Kind.NULL.ordinal() ? "null" : "boolean";
+            case VARIABLE:
+                return analyseVariable(operand);
+            case ARRAY_ELEMENT:
+                return analyseArrayElement(operand);
+            default:
+                return analyseSubroutineCall(operand);
+        }
+    }
+
+    /**
+     * Analyse a variable that is used as a value.
+     * @param variable the variable node.
+     * @return the type of the variable, or "" if it isn't known.
+     */
+    private String analyseVariable(int variable) {
+        int name = this.ast.getFirstChild(variable);
+        Identifier identifier = resolveIdentifier(name, false, true);
+
+        if (identifier == null)
+            return "";
+
+        // Try to resolve the symbol based on it already being in the symbol table
+        if ((identifier.getCIdName().equals("") || identifier.getCIdName().equals(this.globalSt.getName()))
+                && this.scopes.contains(identifier.getIdName()))
+            this.ast.setFlag(variable, Ast.PUSHED);
+
+        // Special case for constructor due to 'return this' being possible in constructor
+        else if (this.ast.getString(name).equals("this") && this.subroutineSymbol.getKind() == Symbol.Kind.CONSTRUCTOR)
+            this.ast.setFlag(variable, Ast.THIS_POINTER);
+
+        return identifier.getType();
+    }
+
+    /**
+     * Analyse an element of an array that is used as a value.
+     * @param element the array element node.
+     * @return the type of the index.
+     */
+    private String analyseArrayElement(int element) {
+        int name = this.ast.getFirstChild(element);
+        Identifier identifier = resolveIdentifier(name, false, true);
+        String arrayIndexType = analyseExpression(this.ast.getNextSibling(name));
+
+        if (identifier != null)
+            this.ast.setFlag(element, Ast.PUSHED);
+
+        if (!arrayIndexType.equals("int"))
+            semanticError(this.ast.getExtra(element),
+                    "Expression in array indices must always evaluate to an integer. Type received was, " + arrayIndexType);
+
+        return arrayIndexType;
+    }
+
+    /**
+     * Resolve a name node, recording the symbol that it resolved to.
+     *
+     * @param name the name node to resolve.
+     * @param declaredCheck, check that the identifier that has been used has been declared previously.
+     * @param initializedCheck, check whether the identifier has been initialized before being used.
+     * @return the identifier, or null if it has not been declared.
+     */
+    private Identifier resolveIdentifier(int name, boolean declaredCheck, boolean initializedCheck) {
+        int scoped = this.ast.getFirstChild(name);
+        Identifier identifier = resolveIdentifier(
+                this.ast.getString(name),
+                this.ast.getLine(name),
+                scoped != Ast.NONE ? this.ast.getString(scoped) : null,
+                scoped != Ast.NONE ? this.ast.getLine(scoped) : -1,
+                declaredCheck,
+                initializedCheck
+        );
+
+        this.ast.setSymbol(name, identifier != null ? identifier.getId() : null);
+        return identifier;
+    }
+
+    /**
+     * Resolve a name, this is a hard task due to the many forms an identifier can come in.
+     *
+     * @param name the identifier, or 'this'.
+     * @param line the line of the identifier.
+     * @param scopedName the identifier after the '.', or null if there isn't one.
+     * @param scopedLine the line of the identifier after the '.'.
+     * @param declaredCheck, check that the identifier that has been used has been declared previously.
+     * @param initializedCheck, check whether the identifier has been initialized before being used.
+     * @return the identifier, or null if it has not been declared.
+     */
+    private Identifier resolveIdentifier(String name, int line, String scopedName, int scopedLine,
+                                         boolean declaredCheck, boolean initializedCheck) {
+        // We need to decide whether the identifier has a class scope associated with it.
+        // If it doesn't, we process it as an identifier that must exist in the current class.
+        // If it does, we process it with more caution because it could be from an external class.
+        boolean isClassIdentifier = scopedName != null;
+
+        // Single identifier
+        if (!isClassIdentifier) {
+            // Cover the case that the identifier may not have been declared and must be resolved later, after compilation
+            if (!this.scopes.contains(name) && !name.equals("this")) {
+                // SEMANTIC ANALYSIS - Identifier used without declaring
+                if (declaredCheck) {
+                    semanticError(line, "Identifier " + name + " used without previously declaring.");
+                    // If we don't want to check whether the identifier is declared, add it to the unresolved identifiers
+                } else {
+                    Identifier unresolvedIdentifier = new Identifier(
+                            this.globalSt.getName(),
+                            getClassObject(),
+                            name,
+                            null,
+                            line
+                    );
+                    this.unresolvedIdentifiers.add(unresolvedIdentifier);
+                    return unresolvedIdentifier;
+                }
+
+            // At this point we know the identifier is in the symbol table so return it
+            } else {
+                // SEMANTIC ANALYSIS - Check to see if the symbol has been initialized
+                if (initializedCheck && !this.scopes.find(name).isInitialized())
+                    semanticWarning(line, "Identifier " + name + " used before being initialized.");
+
+                return new Identifier(
+                        this.globalSt.getName(),
+                        getClassObject(),
+                        name,
+                        this.scopes.find(name),
+                        line
+                );
+            }
+        }
+
+        // Class identifier
+        else {
+            // Check to see if the class level identifier has been declared (it could be a variable or the name of a class)
+            if (!this.scopes.contains(name) && !name.equals(this.globalSt.getName())) {
+                // SEMANTIC ANALYSIS - Check to see if the class level symbol has been initialized
+                if (initializedCheck && this.scopes.contains(name) && !this.scopes.find(name).isInitialized())
+                    semanticWarning(line, "Identifier " + name + " used before being initialized.");
+
+                Identifier unresolvedIdentifier = new Identifier(
+                        name,
+                        scopedName,
+                        line
+                );
+                this.unresolvedIdentifiers.add(unresolvedIdentifier);
+                return unresolvedIdentifier;
+            }
+
+            // We now know that the outer identifier has been defined so we can proceed to check the inner identifier
+            // This case covers when the class identifier is of the current class
+            else if (name.equals(this.globalSt.getName())) {
+                if (!this.globalSt.contains(scopedName)) {
+                    // SEMANTIC ANALYSIS - Identifier used without declaring
+                    if (declaredCheck)
+                        semanticError(scopedLine, "Identifier " + scopedName + " used without previously declaring.");
+                    else {
+                        Identifier unresolvedIdentifier = new Identifier(
+                                this.globalSt.getName(),
+                                scopedName,
+                                scopedLine
+                        );
+                        this.unresolvedIdentifiers.add(unresolvedIdentifier);
+                        return unresolvedIdentifier;
+                    }
+                } else {
+                    return new Identifier(
+                            name,
+                            this.scopes.find(name),
+                            scopedName,
+                            this.globalSt.findSymbol(scopedName),
+                            scopedLine
+                    );
+                }
+
+            // Covers the case when the identifier is a variable identifier referencing a class
+            } else {
+                // SEMANTIC ANALYSIS - Check that the identifier has been initialized since it is now known to be a variable
+                if (initializedCheck && !this.scopes.find(name).isInitialized())
+                    semanticWarning(line, "Identifier " + name + " used before being initialized.");
+
+                // Check the inner identifier
+                String classType = this.scopes.find(name).getType();
+
+                // If the inner identifier is part of another class
+                if (!this.globalSt.getName().equals(classType)) {
+                    // SEMANTIC ANALYSIS - Identifier used without declaring
+                    if (declaredCheck)
+                        semanticError(scopedLine, "Identifier " + scopedName + " used without previously declaring.");
+                    else {
+                        Identifier unresolvedIdentifier = new Identifier(
+                                this.scopes.find(name).getType(),
+                                this.scopes.find(name),
+                                scopedName,
+                                null,
+                                line
+                        );
+                        this.unresolvedIdentifiers.add(unresolvedIdentifier);
+                        return unresolvedIdentifier;
+                    }
+                // Otherwise, it is referencing the current class
+                } else {
+                    if (!this.globalSt.contains(scopedName)) {
+                        // SEMANTIC ANALYSIS - Check that the identifier has been initialized since it is now known to be a variable
+                        if (initializedCheck && !this.scopes.find(scopedName).isInitialized())
+                            semanticWarning(scopedLine, "Identifier " + scopedName + " used before being initialized.");
+
+                        // SEMANTIC ANALYSIS - Identifier used without declaring
+                        if (declaredCheck)
+                            semanticError(scopedLine, "Identifier " + scopedName + " used without previously declaring.");
+                        else {
+                            Identifier unresolvedIdentifier = new Identifier(
+                                    this.globalSt.getName(),
+                                    name,
+                                    line
+                            );
+                            this.unresolvedIdentifiers.add(unresolvedIdentifier);
+                            return unresolvedIdentifier;
+                        }
+                    } else {
+                        return new Identifier(
+                                classType,
+                                this.scopes.find(name),
+                                scopedName,
+                                this.globalSt.findSymbol(scopedName),
+                                scopedLine
+                        );
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the symbol that references 'this' in the current non-static subroutine.
+     * @return the 'this' symbol
+     */
+    private Symbol getClassObject() {
+        boolean isMethod = this.subroutineSymbol.getKind() == Symbol.Kind.METHOD;
+        boolean isConstructor = this.subroutineSymbol.getKind() == Symbol.Kind.CONSTRUCTOR;
+
+        return (isMethod || isConstructor) ? this.scopes.find("this") : null;
+    }
+
+    /**
+     * SEMANTIC ANALYSIS - Check that the arguments provided to a subroutine are in line with the function definition.
+     *
+     * @param identifier the identifier that the arguments are a part of.
+     * @param paramTypes a list of parameter types that have been found.
+     * @param lineNumber the line number that errors are reported at.
+     */
+    private void checkSubroutineArguments(Identifier identifier, LinkedList<String> paramTypes, int lineNumber) {
+        // If the subroutine has not yet been declared or is not part of this class then don't check argument types.
+        if (identifier != null && identifier.getId() != null) {
+            Symbol.Kind subroutineKind = identifier.getKind();
+            if (subroutineKind == Symbol.Kind.METHOD || subroutineKind == Symbol.Kind.CONSTRUCTOR
+                    || subroutineKind == Symbol.Kind.FUNCTION) {
+                ArrayList<String> subroutineSymbolTypes = identifier.getId().getArgumentTypes();
+
+                // SEMANTIC ANALYSIS - Check that the number of arguments
+                if (paramTypes.size() != subroutineSymbolTypes.size())
+                    semanticError(lineNumber, "The number of arguments for the function call doesn't match that of the declaration.");
+
+                // SEMANTIC ANALYSIS - Check that arguments match.
+                Iterator<String> it1 = paramTypes.iterator();
+                Iterator<String> it2 = subroutineSymbolTypes.iterator();
+                while (it1.hasNext() && it2.hasNext()) {
+                    String currentType = it1.next();
+                    String declarType = it2.next();
+
+                    if (!currentType.equals(declarType) && !declarType.equals("int"))
+                        semanticError(lineNumber, "The type: " + currentType + " doesn't match " + declarType + " used in the function declaration.");
+                }
+            }
+        // Add the parameter types to be resolved and checked later
+        } else if (identifier != null){
+            identifier.setArguments(paramTypes);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com;
 
+import java.util.ArrayList;
+
 /**
  * A symbol is used to represent an identifier that is part of the symbol table.
  * It will be declared in the symbol table in which it belongs.
@@ -10,7 +12,7 @@ public class Symbol {
     private Kind kind;                      // The kind that the symbol represents i.e. static, field, etc.
     private int index;                      // The index that the symbol is located at - for vm code.
 
-    private SymbolTable childSymbolTable;   // If the symbol is a subroutine of if/while statement it will have a child symbol table.
+    private ArrayList<String> argumentTypes; // If the symbol is a subroutine, the type of each of its parameters.
     private boolean initialized;            // Whether or not the symbol has been initialized, for semantic analysis.
 
 
@@ -64,33 +66,23 @@ public class Symbol {
     }
 
     /**
-     * Create a new symbol.
+     * Create a new symbol. A subroutine starts without any parameters, which are
+     * added to its argument types as they are declared.
      * @param name name of the symbol.
      * @param type type that the symbol stores/returns.
      * @param kind the kind of symbol.
      * @param index the index that the symbol is placed at.
      * @param initialized whether the symbol is initialized.
-     * @param childSymbolTable the child symbol table if it's kind is class or subroutine.
      */
-    public Symbol(String name, String type, Kind kind, int index, boolean initialized, SymbolTable childSymbolTable) {
+    public Symbol(String name, String type, Kind kind, int index, boolean initialized) {
         this.name = name;
         this.type = type;
         this.kind = kind;
         this.index = index;
         this.initialized = initialized;
-        this.childSymbolTable = childSymbolTable;
-    }
 
-    /**
-     * Create a new symbol that doesnt have a child symbol table
-     * @param name name of the symbol.
-     * @param type type that the symbol stores/returns.
-     * @param kind the kind of symbol.
-     * @param index the index that the symbol is placed at.
-     * @param initialized whether the symbol is initialized.
-     */
-    public Symbol(String name, String type, Kind kind, int index, boolean initialized) {
-        this(name, type, kind, index, initialized,null);
+        if (kind == Kind.METHOD || kind == Kind.FUNCTION || kind == Kind.CONSTRUCTOR)
+            this.argumentTypes = new ArrayList<>();
     }
 
     /**
@@ -99,7 +91,7 @@ public class Symbol {
     public String getName() { return this.name; }
     public String getType() { return this.type; }
     public Kind getKind() { return this.kind; }
-    public SymbolTable getChildSymbolTable() { return this.childSymbolTable; }
+    public ArrayList<String> getArgumentTypes() { return this.argumentTypes; }
     public int getIndex() { return this.index; }
     public boolean isInitialized() { return this.initialized; }
 
@@ -112,6 +104,6 @@ public class Symbol {
 
     @Override
     public String toString() {
-        return "<Symbol " + name + ", " + type + ", " + kind + ", " + index + ", " + childSymbolTable + ", " + initialized +">";
+        return "<Symbol " + name + ", " + type + ", " + kind + ", " + index + ", " + argumentTypes + ", " + initialized +">";
     }
 }
@@ -17,8 +17,87 @@ public class Token {
         STRING_CONSTANT
     }
 
+    // The exact kind of token, one for every keyword and symbol
+    public enum Kind {
+        CLASS("class"),
+        CONSTRUCTOR("constructor"),
+        FUNCTION("function"),
+        METHOD("method"),
+        FIELD("field"),
+        STATIC("static"),
+        VAR("var"),
+        INT("int"),
+        CHAR("char"),
+        BOOLEAN("boolean"),
+        VOID("void"),
+        TRUE("true"),
+        FALSE("false"),
+        NULL("null"),
+        THIS("this"),
+        LET("let"),
+        DO("do"),
+        IF("if"),
+        ELSE("else"),
+        WHILE("while"),
+        RETURN("return"),
+
+        LEFT_BRACE("{"),
+        RIGHT_BRACE("}"),
+        LEFT_PARENTHESIS("("),
+        RIGHT_PARENTHESIS(")"),
+        LEFT_BRACKET("["),
+        RIGHT_BRACKET("]"),
+        DOT("."),
+        COMMA(","),
+        SEMICOLON(";"),
+        PLUS("+"),
+        MINUS("-"),
+        MULTIPLY("*"),
+        DIVIDE("/"),
+        AND("&"),
+        OR("|"),
+        LESS_THAN("<"),
+        GREATER_THAN(">"),
+        EQUALS("="),
+        NOT("~"),
+
+        IDENTIFIER(null),
+        INTEGER(null),
+        STRING_CONSTANT(null),
+        EOF(null);
+
+        private final String lexeme;
+        private final Types type;
+
+        Kind(String lexeme) {
+            this.lexeme = lexeme;
+
+            if (lexeme == null)
+                this.type = Types.valueOf(this.name());
+            else
+                this.type = Character.isLetter(lexeme.charAt(0)) ? Types.KEYWORD : Types.SYMBOL;
+        }
+
+        /**
+         * Get the type of token that this kind belongs to.
+         * @return the type.
+         */
+        public Types getType() {
+            return this.type;
+        }
+
+        /**
+         * Get the lexeme of a keyword or symbol.
+         * @return the lexeme, null if tokens of this kind have different lexemes.
+         */
+        public String getLexeme() {
+            return this.lexeme;
+        }
+    }
+
     public String lexeme;       // The text stored in the identifier
     public Types type;          // The type that the identifier represents i.e. keyword, symbol, ...
+    public Kind kind;           // The keyword or symbol that the token is, or the same as the type otherwise
     public int lineNumber;      // The line number that the token is located at
 
     @Override
@@ -0,0 +1,154 @@
+package com;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The token cache stores the token stream of every file that has been
+ * tokenized, keyed by a hash of the source code. Any tool that tokenizes
+ * jack files can share the cache, so a file that hasn't changed is only
+ * ever scanned once. Cached token streams are memory mapped, and their
+ * hash is checked against the source before they are used.
+ */
+public class TokenCache {
+    private final File directory;   // The directory that the token streams are stored in.
+
+    /**
+     * Create a cache that is stored in the directory provided.
+     * @param directory the directory to store the cache in, created if it doesn't exist.
+     * @throws IOException thrown if the directory cannot be created.
+     */
+    public TokenCache(File directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Create a tokenizer for a file, reading its tokens from the cache if they
+     * have been cached. Otherwise the file is tokenized and its tokens are
+     * cached before the tokenizer is returned. A file that cannot be tokenized
+     * is left to the tokenizer to report.
+     * @param jackFile the file to tokenize.
+     * @return the tokenizer.
+     * @throws IOException thrown if the file cannot be read.
+     */
+    public Tokenizer open(File jackFile) throws IOException {
+        byte[] bytes = Files.readAllBytes(jackFile.toPath());
+        char[] source = new String(bytes, StandardCharsets.UTF_8).toCharArray();
+        byte[] hash = hash(bytes);
+        String key = hex(hash);
+
+        TokenStream tokens = this.lookup(key, hash, source.length);
+        if (tokens != null)
+            return new Tokenizer(source, tokens);
+
+        try {
+            tokens = TokenStream.scan(source, hash);
+        } catch (TokenizerException e) {
+            return new Tokenizer(source);
+        }
+
+        this.store(key, tokens);
+        return new Tokenizer(source, tokens);
+    }
+
+    /**
+     * Find the token stream stored under a key.
+     * @param key the key of the source file.
+     * @param hash the hash of the source that the tokens must have been read from.
+     * @param sourceLength the number of characters in the source.
+     * @return the token stream, or null if the file needs tokenizing.
+     * @throws IOException thrown if the token stream could not be read.
+     */
+    private TokenStream lookup(String key, byte[] hash, int sourceLength) throws IOException {
+        Path path = this.path(key);
+
+        if (!Files.isRegularFile(path))
+            return null;
+
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // The hash only covers the source, so a damaged stream is tokenized again rather than trusted
+        TokenStream tokens;
+        try {
+            tokens = TokenStream.load(data, sourceLength);
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        return tokens != null && Arrays.equals(tokens.getHash(), hash) ? tokens : null;
+    }
+
+    /**
+     * Store the token stream of a file. The data is written to a temporary file
+     * first so that another tool reading the cache never sees half of a stream.
+     * @param key the key of the source file.
+     * @param tokens the token stream.
+     * @throws IOException thrown if the token stream could not be stored.
+     */
+    private void store(String key, TokenStream tokens) throws IOException {
+        Path temp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer data = tokens.save();
+                while (data.hasRemaining())
+                    channel.write(data);
+            }
+            Files.move(temp, this.path(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Get the path that the token stream for a key is stored at.
+     * @param key the key of the source file.
+     * @return the path.
+     */
+    private Path path(String key) {
+        return this.directory.toPath().resolve(key + ".tok");
+    }
+
+    /**
+     * Hash some source code, along with the version of the token stream format.
+     * @param source the source code.
+     * @return the SHA-256 hash.
+     * @throws IOException thrown if SHA-256 is not supported.
+     */
+    private static byte[] hash(byte[] source) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((TokenStream.FORMAT + "\0").getBytes(StandardCharsets.UTF_8));
+            return digest.digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not supported.", e);
+        }
+    }
+
+    /**
+     * Hex encode a hash.
+     * @param hash the hash.
+     * @return the hex encoded hash.
+     */
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash)
+            hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+}
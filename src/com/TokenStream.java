@@ -0,0 +1,236 @@
+package com;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ * A token stream holds every token of a source file, so that the file can
+ * be tokenized again without scanning it. The tokens are kept in parallel
+ * buffers holding the kind, start offset, length and line number of each
+ * token, along with a table of the identifier names in the file.
+ *
+ * A token stream can be saved in a compact binary format whose buffers can
+ * be used straight from a memory mapped file:
+ *
+ *   "JTOK", format version, SHA-256 hash of the source (32 bytes)
+ *   CRC-32 checksum of the rest of the data
+ *   token count, name count
+ *   each name as its length followed by its UTF-16 characters
+ *   start offset, length, line number and name index (-1 if none) of each token
+ *   kind ordinal of each token, one byte each
+ *
+ * Every number is a big endian int. The hash of the source says which
+ * source the tokens belong to, and the checksum protects the tokens.
+ */
+public class TokenStream {
+    public static final int FORMAT = 2;                     // Version of the binary format, changed with Token.Kind.
+    private static final int MAGIC = 0x4a544f4b;            // "JTOK"
+    public static final int HASH_LENGTH = 32;               // The length of the source hash.
+
+    private final byte[] hash;                              // Hash of the source code the tokens were read from.
+    private final int count;                                // The number of tokens, including the EOF token.
+    private final String[] names;                           // The identifier names, by index.
+    private final IntBuffer starts;                         // The index of the first character of each token.
+    private final IntBuffer lengths;                        // The number of characters in each token.
+    private final IntBuffer lines;                          // The line number of each token.
+    private final IntBuffer nameIndexes;                    // The name of each identifier, -1 for other tokens.
+    private final ByteBuffer kinds;                         // The ordinal of the kind of each token.
+
+    /**
+     * Create a token stream from its buffers.
+     */
+    private TokenStream(byte[] hash, int count, String[] names, IntBuffer starts, IntBuffer lengths,
+                        IntBuffer lines, IntBuffer nameIndexes, ByteBuffer kinds) {
+        this.hash = hash;
+        this.count = count;
+        this.names = names;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.lines = lines;
+        this.nameIndexes = nameIndexes;
+        this.kinds = kinds;
+    }
+
+    /**
+     * Tokenize the whole of some source code.
+     * @param source the source code.
+     * @param hash the hash of the source code, stored with the tokens so they can be checked when loaded.
+     * @return the token stream.
+     * @throws TokenizerException thrown if the source contains a token that is not valid.
+     */
+    public static TokenStream scan(char[] source, byte[] hash) throws TokenizerException {
+        Tokenizer t = new Tokenizer(source);
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String, Integer> nameIndexes = new HashMap<>();
+        int capacity = Math.max(16, source.length / 4);
+        int[][] columns = new int[4][capacity];
+        byte[] kinds = new byte[capacity];
+        int count = 0;
+        Token.Kind kind;
+
+        do {
+            kind = t.peekKind();
+
+            if (count == kinds.length) {
+                kinds = Arrays.copyOf(kinds, count * 2);
+                for (int i = 0; i < columns.length; i++)
+                    columns[i] = Arrays.copyOf(columns[i], count * 2);
+            }
+
+            int nameIndex = -1;
+            if (kind == Token.Kind.IDENTIFIER) {
+                String name = t.peekLexeme(1);
+                nameIndex = nameIndexes.computeIfAbsent(name, n -> {
+                    names.add(n);
+                    return names.size() - 1;
+                });
+            }
+
+            kinds[count] = (byte) kind.ordinal();
+            columns[0][count] = t.peekStart();
+            columns[1][count] = t.peekLength();
+            columns[2][count] = t.peekLineNumber();
+            columns[3][count] = nameIndex;
+            count++;
+
+            t.advance();
+        } while (kind != Token.Kind.EOF);
+
+        return new TokenStream(hash, count, names.toArray(new String[0]), IntBuffer.wrap(columns[0], 0, count).slice(),
+                IntBuffer.wrap(columns[1], 0, count).slice(), IntBuffer.wrap(columns[2], 0, count).slice(),
+                IntBuffer.wrap(columns[3], 0, count).slice(), ByteBuffer.wrap(kinds, 0, count).slice());
+    }
+
+    /**
+     * Load a token stream that has been saved in the binary format. The tokens
+     * are used straight from the buffer, which can be a memory mapped file.
+     * @param data the saved token stream.
+     * @param sourceLength the number of characters in the source the tokens must have been read from.
+     * @return the token stream, or null if the data is not a valid token stream.
+     */
+    public static TokenStream load(ByteBuffer data, int sourceLength) {
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != FORMAT)
+                return null;
+
+            byte[] hash = new byte[HASH_LENGTH];
+            data.get(hash);
+
+            int checksum = data.getInt();
+            if (checksum != checksum(data.slice()))
+                return null;
+
+            // Check the counts against the data left before allocating anything from them
+            int count = data.getInt();
+            int nameCount = data.getInt();
+            if (count < 1 || count > data.remaining() / 17 || nameCount < 0 || nameCount > data.remaining() / 4)
+                return null;
+
+            String[] names = new String[nameCount];
+            for (int i = 0; i < names.length; i++) {
+                int nameLength = data.getInt();
+                if (nameLength < 0 || nameLength > data.remaining() / 2)
+                    return null;
+
+                char[] name = new char[nameLength];
+                data.asCharBuffer().get(name);
+                data.position(data.position() + name.length * 2);
+                names[i] = new String(name);
+            }
+
+            IntBuffer starts = column(data, count);
+            IntBuffer lengths = column(data, count);
+            IntBuffer lines = column(data, count);
+            IntBuffer nameIndexes = column(data, count);
+            ByteBuffer kinds = data.slice().limit(count);
+
+            if (kinds.remaining() != count || kinds.get(count - 1) != Token.Kind.EOF.ordinal())
+                return null;
+
+            // Make sure every token can be turned back into a kind, name and lexeme
+            int kindCount = Token.Kind.values().length;
+            for (int i = 0; i < count; i++) {
+                if (kinds.get(i) < 0 || kinds.get(i) >= kindCount
+                        || nameIndexes.get(i) < -1 || nameIndexes.get(i) >= names.length
+                        || starts.get(i) < 0 || lengths.get(i) < 0 || starts.get(i) > sourceLength - lengths.get(i))
+                    return null;
+            }
+
+            return new TokenStream(hash, count, names, starts, lengths, lines, nameIndexes, kinds);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Take a column of ints from the data of a saved token stream, moving past it.
+     * @param data the saved token stream.
+     * @param count the number of tokens.
+     * @return the column.
+     */
+    private static IntBuffer column(ByteBuffer data, int count) {
+        IntBuffer column = data.slice().asIntBuffer().limit(count);
+        data.position(data.position() + count * 4);
+        return column;
+    }
+
+    /**
+     * Work out the checksum of the data that follows the checksum of a saved token stream.
+     * @param data the data after the checksum, which is consumed.
+     * @return the checksum.
+     */
+    private static int checksum(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Save the token stream in the binary format.
+     * @return the saved token stream.
+     */
+    public ByteBuffer save() {
+        int size = 5 * 4 + HASH_LENGTH + this.count * 17;
+        for (String name : this.names)
+            size += 4 + name.length() * 2;
+
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(MAGIC).putInt(FORMAT).put(this.hash);
+        int checksumPosition = data.position();
+        data.putInt(0).putInt(this.count).putInt(this.names.length);
+
+        for (String name : this.names) {
+            data.putInt(name.length());
+            for (int i = 0; i < name.length(); i++)
+                data.putChar(name.charAt(i));
+        }
+
+        for (IntBuffer column : new IntBuffer[] { this.starts, this.lengths, this.lines, this.nameIndexes }) {
+            for (int i = 0; i < this.count; i++)
+                data.putInt(column.get(i));
+        }
+
+        for (int i = 0; i < this.count; i++)
+            data.put(this.kinds.get(i));
+
+        data.putInt(checksumPosition, checksum(data.flip().position(checksumPosition + 4)));
+        return data.rewind();
+    }
+
+    /**
+     * Getters.
+     */
+    public byte[] getHash() { return this.hash; }
+    public int getCount() { return this.count; }
+    public String getName(int index) { return this.names[index]; }
+    public byte getKindOrdinal(int index) { return this.kinds.get(index); }
+    public int getStart(int index) { return this.starts.get(index); }
+    public int getLength(int index) { return this.lengths.get(index); }
+    public int getLine(int index) { return this.lines.get(index); }
+    public int getNameIndex(int index) { return this.nameIndexes.get(index); }
+}
@@ -1,85 +1,139 @@
 package com;
 
 import java.io.*;
-import java.util.HashSet;
-import java.util.Arrays;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 public class Tokenizer {
-    private BufferedReader br;
+    private final char[] source;    // The whole of the source code being tokenized.
+    private int position;           // The index of the next character to be read.
     private int lineNumber;
-    private Token previousToken;
-    private boolean peeked;
-
-    private HashSet<String> keywords = new HashSet<>(Arrays.asList(
-            "class",
-            "constructor",
-            "function",
-            "method",
-            "field",
-            "static",
-            "var",
-            "int",
-            "char",
-            "boolean",
-            "void",
-            "true",
-            "false",
-            "null",
-            "this",
-            "let",
-            "do",
-            "if",
-            "else",
-            "while",
-            "return"
-    ));
-
-    private HashSet<Character> symbols = new HashSet<>(Arrays.asList(
-            '{',
-            '}',
-            '(',
-            ')',
-            '[',
-            ']',
-            '.',
-            ',',
-            ';',
-            '+',
-            '-',
-            '*',
-            '/',
-            '&',
-            '|',
-            '<',
-            '>',
-            '=',
-            '-',
-            '~'
-    ));
-
-    public Tokenizer(File file) throws FileNotFoundException {
+    private final NameTable names;  // The identifiers that have been read so far.
+
+    // Tokens that have been read ahead, held in a ring buffer of parallel arrays
+    private static final int LOOKAHEAD = 4;
+    private final byte[] kinds;     // The ordinal of the kind of each token.
+    private final int[] starts;     // The index of the first character of each token.
+    private final int[] lengths;    // The number of characters in each token.
+    private final int[] lines;      // The line number of each token.
+    private final String[] lexemes; // The lexeme of each token, null until it is asked for.
+    private int head;               // The slot of the next token.
+    private int buffered;           // The number of tokens that have been read ahead.
+
+    private final TokenStream tokens;   // Tokens already read from the source, null to scan the source.
+    private int nextToken;              // The index of the next token in the token stream.
+
+    // Character classes of the ASCII characters, combined as bit flags
+    private static final byte WHITESPACE = 1;
+    private static final byte LETTER = 2;
+    private static final byte DIGIT = 4;
+    private static final byte SYMBOL = 8;
+    private static final byte[] CLASSES = new byte[128];
+
+    // The kind of each symbol, whose lexeme is shared so that symbol tokens don't create a new string
+    private static final Token.Kind[] SYMBOL_KINDS = new Token.Kind[128];
+
+    private static final Token.Kind[] KINDS = Token.Kind.values();
+    private static final String EOF_LEXEME = String.valueOf((char) -1);
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if (Character.isWhitespace(c))
+                CLASSES[c] |= WHITESPACE;
+            if (Character.isLetter(c))
+                CLASSES[c] |= LETTER;
+            if (Character.isDigit(c))
+                CLASSES[c] |= DIGIT;
+        }
+
+        for (Token.Kind kind : Token.Kind.values()) {
+            String lexeme = kind.getLexeme();
+
+            if (lexeme != null && lexeme.length() == 1) {
+                CLASSES[lexeme.charAt(0)] |= SYMBOL;
+                SYMBOL_KINDS[lexeme.charAt(0)] = kind;
+            }
+        }
+    }
+
+    /**
+     * Create a tokenizer that reads the whole of a file into memory.
+     * @param file the file to tokenize.
+     * @throws IOException thrown if the file cannot be read.
+     */
+    public Tokenizer(File file) throws IOException {
+        this(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).toCharArray());
+    }
+
+    /**
+     * Create a tokenizer that reads source code that is already held in memory
+     * or comes from any other reader. The reader is read to the end straight away.
+     * @param reader the reader that the source code is read from.
+     * @throws IOException thrown if the reader cannot be read.
+     */
+    public Tokenizer(Reader reader) throws IOException {
+        this(readAll(reader));
+    }
+
+    /**
+     * Create a tokenizer for source code held in a character array.
+     * The array is used directly and must not be changed while tokenizing.
+     * @param source the source code.
+     */
+    public Tokenizer(char[] source) {
+        this(source, null);
+    }
+
+    /**
+     * Create a tokenizer that reads its tokens from a token stream rather than
+     * scanning the source. The source is only used to create the lexemes of
+     * integers and strings.
+     * @param source the source code.
+     * @param tokens the tokens of the source code, or null to scan the source.
+     */
+    public Tokenizer(char[] source, TokenStream tokens) {
+        this.source = source;
+        this.tokens = tokens;
+        this.nextToken = 0;
+        this.position = 0;
         this.lineNumber = 1;
-        this.peeked = false;
+        this.names = new NameTable();
+        this.kinds = new byte[LOOKAHEAD];
+        this.starts = new int[LOOKAHEAD];
+        this.lengths = new int[LOOKAHEAD];
+        this.lines = new int[LOOKAHEAD];
+        this.lexemes = new String[LOOKAHEAD];
+        this.head = 0;
+        this.buffered = 0;
+    }
+
+    /**
+     * Read everything that is left in a reader.
+     * @param reader the reader.
+     * @return the characters that were read.
+     * @throws IOException thrown if the reader cannot be read.
+     */
+    private static char[] readAll(Reader reader) throws IOException {
+        CharArrayWriter characters = new CharArrayWriter();
+        char[] buffer = new char[8192];
+        int count;
 
-        this.br = new BufferedReader(
-                new InputStreamReader(new FileInputStream(file),
-                        Charset.forName("UTF-8"))
-        );
+        while ((count = reader.read(buffer)) != -1)
+            characters.write(buffer, 0, count);
+
+        return characters.toCharArray();
     }
 
     /**
-     * Read a single character from the file that has been referenced.
-     * @return int, resembling a character
+     * Read a single character from the source.
+     * @return int, resembling a character, -1 at the end of the source.
      */
     private int read() {
-        int nextCharacter = -1;
+        if (this.position >= this.source.length)
+            return -1;
+
+        char nextCharacter = this.source[this.position++];
 
-        try {
-            nextCharacter = (br.read());
-        } catch (IOException ex) {
-            System.out.println("Read failed");
-        }
         // add to the line counter when newline character encountered
         if (nextCharacter == '\n')
             lineNumber++;
@@ -91,28 +145,54 @@ public class Tokenizer {
      * @return int resembling a character from file.
      */
     private int peek() {
-        return this.peek(1);
+        int index = this.position;
+        return index < this.source.length ? this.source[index] : -1;
     }
 
     /**
-     * Peek a character from the file that has been referenced.
-     * This is done by reading a character then resetting the buffered reader.
+     * Peek a character from the source without moving past it.
      * @param lookAheadValue changing this value will change the 'look ahead' amount.
-     * @return int resembling a character from file.
+     * @return int resembling a character from file, -1 past the end of the source.
      */
     private int peek(int lookAheadValue) {
-        int nextCharacter = -1;
+        int index = this.position + lookAheadValue - 1;
+        return index < this.source.length ? this.source[index] : -1;
+    }
 
-        try {
-            br.mark(lookAheadValue);
-            for (int x = 0; x < lookAheadValue; x++) {
-                nextCharacter = br.read();
-            }
-            br.reset();
-        } catch (IOException ex) {
-            System.out.println("Peek failed");
-        }
-        return nextCharacter;
+    /**
+     * Check whether a character is white space.
+     * @param c the character, or -1 at the end of the source.
+     * @return true if the character is white space.
+     */
+    private static boolean isWhitespace(int c) {
+        return c >= 0 && c < 128 ? (CLASSES[c] & WHITESPACE) != 0 : Character.isWhitespace(c);
+    }
+
+    /**
+     * Check whether a character is a letter.
+     * @param c the character, or -1 at the end of the source.
+     * @return true if the character is a letter.
+     */
+    private static boolean isLetter(int c) {
+        return c >= 0 && c < 128 ? (CLASSES[c] & LETTER) != 0 : Character.isLetter(c);
+    }
+
+    /**
+     * Check whether a character is a digit.
+     * @param c the character, or -1 at the end of the source.
+     * @return true if the character is a digit.
+     */
+    private static boolean isDigit(int c) {
+        return c >= 0 && c < 128 ? (CLASSES[c] & DIGIT) != 0 : Character.isDigit(c);
+    }
+
+    /**
+     * Check whether a character is a symbol. Every symbol is an ASCII character.
+     * @param c the character, or -1 at the end of the source.
+     * @return true if the character is a symbol.
+     */
+    private static boolean isSymbol(int c) {
+        return c >= 0 && c < 128 && (CLASSES[c] & SYMBOL) != 0;
     }
 
     /**
@@ -139,7 +219,7 @@ public class Tokenizer {
                 }
 
             // Remove white space characters
-            } else if (Character.isWhitespace(this.peek())) {
+            } else if (isWhitespace(this.peek())) {
                 this.read();
             } else {
                 break;
@@ -148,146 +228,364 @@ public class Tokenizer {
     }
 
     /**
-     * Create a new token with no type initialized.
-     * @param lexeme String
-     * @return Token
+     * If a lexeme begins with a letter or INTEGER, then there may well
+     * be more than one character. This method finds the end of the lexeme
+     * that starts with the character that has just been read, moving past it.
+     * An integer ends at white space, a symbol or a letter, anything else
+     * ends at white space or a symbol.
+     * @param isIntegerToken whether the lexeme is an integer
+     * @return the index just past the end of the lexeme
      */
-    private Token createToken(String lexeme) {
-        return createToken(lexeme, null);
+    private int scanLexeme(boolean isIntegerToken) {
+        int mask = isIntegerToken ? WHITESPACE | SYMBOL | LETTER : WHITESPACE | SYMBOL;
+        int end = this.position;
+
+        while (end < this.source.length) {
+            char c = this.source[end];
+
+            // Non-ASCII characters are never symbols so only need the slow checks
+            if (c < 128 ? (CLASSES[c] & mask) != 0 : Character.isWhitespace(c) || (isIntegerToken && Character.isLetter(c)))
+                break;
+            end++;
+        }
+
+        this.position = end;
+        return end;
     }
 
     /**
-     * Create a new token given the lexeme and the token type.
-     * The lineNumber is added here also.
-     * @param lexeme String
-     * @param type TokenType
-     * @return Token
+     * Find the string literal whose first character has just been read, moving
+     * past it up to the closing '"', which is left to be read.
+     * @return the index just past the end of the lexeme
+     * @exception TokenizerException Thrown when the entire file has been read unexpectedly.
      */
-    private Token createToken(String lexeme, Token.Types type) {
-        Token t = new Token();
-        t.lexeme = lexeme;
-        t.type = type;
-        t.lineNumber = this.lineNumber;
-        return t;
+    private int scanStringLexeme() throws TokenizerException {
+        int end = this.position;
+
+        while (end < this.source.length && this.source[end] != '"') {
+            if (this.source[end] == '\n')
+                this.lineNumber++;
+            end++;
+        }
+
+        this.position = end;
+
+        // Ending string literal not found before EOF
+        if (end >= this.source.length)
+            throw new TokenizerException(this.lineNumber, "Unexpected end of file while scanning string literal");
+
+        return end;
     }
 
     /**
-     * Override, giving default argument for isStringConstant.
+     * Find the keyword that a lexeme matches without creating a string for it.
+     * @param start the index of the first character of the lexeme
+     * @param length the length of the lexeme
+     * @return the kind of keyword, or null if the lexeme is not a keyword
      */
-    private String getMultiCharacterLexeme(int currentCharacter) throws TokenizerException {
-        return this.getMultiCharacterLexeme(currentCharacter, false);
+    private Token.Kind getKeyword(int start, int length) {
+        switch (this.source[start]) {
+            case 'b': return this.match(Token.Kind.BOOLEAN, start, length);
+            case 'c': return length == 4 ? this.match(Token.Kind.CHAR, start, length)
+                    : length == 5 ? this.match(Token.Kind.CLASS, start, length)
+                    : this.match(Token.Kind.CONSTRUCTOR, start, length);
+            case 'd': return this.match(Token.Kind.DO, start, length);
+            case 'e': return this.match(Token.Kind.ELSE, start, length);
+            case 'f': return length == 5 && this.source[start + 1] == 'i' ? this.match(Token.Kind.FIELD, start, length)
+                    : length == 5 ? this.match(Token.Kind.FALSE, start, length)
+                    : this.match(Token.Kind.FUNCTION, start, length);
+            case 'i': return length == 3 ? this.match(Token.Kind.INT, start, length) : this.match(Token.Kind.IF, start, length);
+            case 'l': return this.match(Token.Kind.LET, start, length);
+            case 'm': return this.match(Token.Kind.METHOD, start, length);
+            case 'n': return this.match(Token.Kind.NULL, start, length);
+            case 'r': return this.match(Token.Kind.RETURN, start, length);
+            case 's': return this.match(Token.Kind.STATIC, start, length);
+            case 't': return length == 4 && this.source[start + 1] == 'h' ? this.match(Token.Kind.THIS, start, length)
+                    : this.match(Token.Kind.TRUE, start, length);
+            case 'v': return length == 3 ? this.match(Token.Kind.VAR, start, length) : this.match(Token.Kind.VOID, start, length);
+            case 'w': return this.match(Token.Kind.WHILE, start, length);
+            default: return null;
+        }
     }
 
     /**
-     * If a lexeme begins with a letter or INTEGER, then there may well
-     * be more than one character. This method finds the rest of the
-     * characters and builds a lexeme. If the function runs into an EOF
-     * character, something has gone wrong.
-     * @param currentCharacter The character currently being compared
-     * @param isStringConstant if a string has been detected in getNextToken,
-     *        then we need to know to only look out for a '"' and no other delimiters
-     * @return String containing lexeme
-     * @exception TokenizerException Thrown when the entire file has been read unexpectedly.
+     * Compare part of the source with a keyword.
+     * @param keyword the keyword
+     * @param start the index of the first character of the lexeme
+     * @param length the length of the lexeme
+     * @return the keyword if the lexeme matches it, otherwise null
      */
-    private String getMultiCharacterLexeme(int currentCharacter, boolean isStringConstant) throws TokenizerException {
-        int c = currentCharacter;
-        boolean isIntegerToken = false;
-        StringBuilder lexeme = new StringBuilder();
-
-        // If the current character is an integer then we need to
-        // make sure that a letter placed after it is separated into a new token.
-        if (Character.isDigit(c) && !isStringConstant)
-            isIntegerToken = true;
-
-        // Iterate until delimiter found
-        while (detectDelimiter((char)this.peek(), isStringConstant, isIntegerToken)) {
-            // Ending string literal not found before EOF
-            if ((c == -1 || c == 65535) && isStringConstant)
-                throw new TokenizerException(this.lineNumber, "Unexpected end of file while scanning string literal");
-            // Possible grammar error but not dealt with yet
-            else if (c == -1 || c == 65535)
-                return lexeme.toString();
+    private Token.Kind match(Token.Kind keyword, int start, int length) {
+        String lexeme = keyword.getLexeme();
+
+        if (lexeme.length() != length)
+            return null;
 
-            lexeme.append((char)c);
-            c = (char)this.read();
+        for (int i = 1; i < length; i++) {
+            if (this.source[start + i] != lexeme.charAt(i))
+                return null;
         }
-        // Append last character and return lexeme
-        lexeme.append((char)c);
-        return lexeme.toString();
-    }
 
-    /**
-     * Detect a delimiter dependent upon whether a string is being
-     * detected or an identifier/keyword.
-     * @param c the current character
-     * @param isStringConstant determine whether to look for '"' or whitespace and symbols
-     * @param isIntegerToken determine if a character placed after integer is valid
-     * @return false if end of statement has not been reached
-     */
-    private boolean detectDelimiter(int c, boolean isStringConstant, boolean isIntegerToken) {
-        if (isIntegerToken)
-            return !Character.isWhitespace(c) && !symbols.contains((char)c) && !Character.isLetter(c);
-        else if (isStringConstant)
-            return c != '"';
-        else
-            return !Character.isWhitespace(c) && !symbols.contains((char)c);
+        return keyword;
     }
 
     /**
-     * Get the next token by reading the next values in the input stream.
-     * @return Token
-     * @throws IOException if the end of the file is reached, or problem with buffered reader
-     * @throws IllegalArgumentException if the reader comes across a character that is unexpected.
+     * Read the next token from the source into a slot of the lookahead buffer.
+     * @param slot the slot to fill.
+     * @exception TokenizerException thrown if the token is not valid.
      */
-    public Token getNextToken() throws TokenizerException {
-        int c;
-        Token t;
-
-        if (this.peeked) {
-            this.peeked = false;
-            return this.previousToken;
+    private void scan(int slot) throws TokenizerException {
+        if (this.tokens != null) {
+            this.load(slot);
+            return;
         }
 
+        Token.Kind kind;
+        String lexeme = null;
+        int start;
+        int c;
+
         this.stripWhiteSpaceAndComments();
         c = this.read();
+        start = this.position - 1;
 
         // Check if EOF token
         if (c == -1) {
-            t = createToken(String.valueOf((char) c), Token.Types.EOF);
-
-            try {
-                this.br.close();
-            } catch (IOException e) {
-                throw new TokenizerException(this.lineNumber, "Unable to close tokenizer buffered reader.");
-            }
+            kind = Token.Kind.EOF;
+            lexeme = EOF_LEXEME;
+            start = this.position;
 
         // Check if string literal token
         } else if (c == '"') {
             c = this.read();
-            t = createToken(getMultiCharacterLexeme(c, true), Token.Types.STRING_CONSTANT);
-            this.read(); // discard last '"'
+            if (c == -1)
+                throw new TokenizerException(this.lineNumber, "Unexpected end of file while scanning string literal");
+            kind = Token.Kind.STRING_CONSTANT;
+            start = this.position - 1;
+            this.scanStringLexeme();
         }
 
         // Check for letter: keyword or identifier
-        else if (Character.isLetter(c) || c == '_') {
-            t = createToken(getMultiCharacterLexeme(c));
-            t.type = keywords.contains(t.lexeme) ?
-                    Token.Types.KEYWORD : Token.Types.IDENTIFIER;
+        else if (isLetter(c) || c == '_') {
+            int length = this.scanLexeme(false) - start;
+            kind = this.getKeyword(start, length);
+
+            if (kind != null) {
+                lexeme = kind.getLexeme();
+            } else {
+                kind = Token.Kind.IDENTIFIER;
+                lexeme = this.names.intern(this.source, start, length);
+            }
         }
 
         // Check if integer
-        else if (Character.isDigit((char)c))
-            t = createToken(getMultiCharacterLexeme(c), Token.Types.INTEGER);
+        else if (isDigit(c)) {
+            kind = Token.Kind.INTEGER;
+            this.scanLexeme(true);
+        }
         // Check if symbol
-        else if (symbols.contains((char)c))
-            t = createToken(String.valueOf((char)c), Token.Types.SYMBOL);
+        else if (isSymbol(c)) {
+            kind = SYMBOL_KINDS[c];
+            lexeme = kind.getLexeme();
+        }
         // Invalid symbol not supported by the jack compiler
         else
             throw new TokenizerException(this.lineNumber, "Unresolved symbol \"" + (char)c + "\" found.");
 
-        // Store current token to enable peek to function
-        this.peeked = false;
-        this.previousToken = t;
+        this.kinds[slot] = (byte) kind.ordinal();
+        this.starts[slot] = start;
+        this.lengths[slot] = this.position - start;
+        this.lines[slot] = this.lineNumber;
+        this.lexemes[slot] = lexeme;
+
+        if (kind == Token.Kind.STRING_CONSTANT)
+            this.read(); // discard last '"'
+    }
+
+    /**
+     * Copy the next token from the token stream into a slot of the lookahead buffer.
+     * The last token of a stream is always EOF, which is repeated once it is reached.
+     * @param slot the slot to fill.
+     */
+    private void load(int slot) {
+        int index = Math.min(this.nextToken++, this.tokens.getCount() - 1);
+        int nameIndex = this.tokens.getNameIndex(index);
+        byte kind = this.tokens.getKindOrdinal(index);
+
+        this.kinds[slot] = kind;
+        this.starts[slot] = this.tokens.getStart(index);
+        this.lengths[slot] = this.tokens.getLength(index);
+        this.lines[slot] = this.tokens.getLine(index);
+        this.lexemes[slot] = nameIndex >= 0 ? this.tokens.getName(nameIndex) : KINDS[kind].getLexeme();
+
+        if (KINDS[kind] == Token.Kind.EOF)
+            this.lexemes[slot] = EOF_LEXEME;
+    }
+
+    /**
+     * Find the slot of a token that is still to be read, reading ahead as far as needed.
+     * @param lookAhead how far ahead the token is, 1 for the next token.
+     * @return the slot that the token is stored in.
+     * @exception TokenizerException thrown if a token on the way is not valid.
+     */
+    private int fill(int lookAhead) throws TokenizerException {
+        // The next token has almost always been read already
+        if (lookAhead == 1 && this.buffered > 0)
+            return this.head;
+
+        if (lookAhead < 1 || lookAhead > LOOKAHEAD)
+            throw new IllegalArgumentException("Tokens can only be looked ahead between 1 and " + LOOKAHEAD + ".");
+
+        while (this.buffered < lookAhead) {
+            this.scan((this.head + this.buffered) & (LOOKAHEAD - 1));
+            this.buffered++;
+        }
+
+        return (this.head + lookAhead - 1) & (LOOKAHEAD - 1);
+    }
+
+    /**
+     * Get the kind of the next token, without reading past it.
+     * @return the kind of the next token.
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    public Token.Kind peekKind() throws TokenizerException {
+        return this.peekKind(1);
+    }
+
+    /**
+     * Get the kind of a token further ahead, without reading past it.
+     * @param lookAhead how far ahead the token is, 1 for the next token.
+     * @return the kind of the token.
+     * @exception TokenizerException thrown if a token on the way is not valid.
+     */
+    public Token.Kind peekKind(int lookAhead) throws TokenizerException {
+        return KINDS[this.kinds[this.fill(lookAhead)]];
+    }
+
+    /**
+     * Get the line number of the next token, without reading past it.
+     * @return the line number.
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    public int peekLineNumber() throws TokenizerException {
+        return this.lines[this.fill(1)];
+    }
+
+    /**
+     * Get the index in the source of the first character of the next token.
+     * @return the index.
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    int peekStart() throws TokenizerException {
+        return this.starts[this.fill(1)];
+    }
+
+    /**
+     * Get the number of characters in the source that the next token spans.
+     * @return the length.
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    int peekLength() throws TokenizerException {
+        return this.lengths[this.fill(1)];
+    }
+
+    /**
+     * Get the lexeme of a token that is still to be read. The lexemes of integers
+     * and strings are only created when they are first asked for.
+     * @param lookAhead how far ahead the token is, 1 for the next token.
+     * @return the lexeme of the token.
+     * @exception TokenizerException thrown if a token on the way is not valid.
+     */
+    public String peekLexeme(int lookAhead) throws TokenizerException {
+        int slot = this.fill(lookAhead);
+
+        if (this.lexemes[slot] == null)
+            this.lexemes[slot] = new String(this.source, this.starts[slot], this.lengths[slot]);
+
+        return this.lexemes[slot];
+    }
+
+    /**
+     * Move past the next token without creating a token for it.
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    public void advance() throws TokenizerException {
+        if (this.buffered == 0)
+            this.fill(1);
+        this.head = (this.head + 1) & (LOOKAHEAD - 1);
+        this.buffered--;
+    }
+
+    /**
+     * Move past the rest of a block whose '{' has just been read, up to the '}' that
+     * closes it, which is left to be read. Only braces, comments and string literals
+     * are looked at, so no token is created for anything inside the block. If the end
+     * of the source is reached first, the end of file is left to be read instead.
+     * @exception TokenizerException thrown if a comment or string literal isn't closed, or a token read ahead is not valid.
+     */
+    public void skipBlock() throws TokenizerException {
+        int depth = 1;
+
+        // Tokens that have already been read ahead are counted first
+        while (this.buffered > 0) {
+            Token.Kind kind = KINDS[this.kinds[this.head]];
+
+            if (kind == Token.Kind.EOF || (kind == Token.Kind.RIGHT_BRACE && depth == 1))
+                return;
+            else if (kind == Token.Kind.RIGHT_BRACE)
+                depth--;
+            else if (kind == Token.Kind.LEFT_BRACE)
+                depth++;
+            this.advance();
+        }
+
+        // A token stream already knows the kind of each token
+        if (this.tokens != null) {
+            for (int last = this.tokens.getCount() - 1; this.nextToken < last; this.nextToken++) {
+                Token.Kind kind = KINDS[this.tokens.getKindOrdinal(this.nextToken)];
+
+                if (kind == Token.Kind.RIGHT_BRACE && depth == 1)
+                    return;
+                else if (kind == Token.Kind.RIGHT_BRACE)
+                    depth--;
+                else if (kind == Token.Kind.LEFT_BRACE)
+                    depth++;
+            }
+            return;
+        }
+
+        while (this.position < this.source.length) {
+            char c = this.source[this.position];
+
+            if (c == '/' && (this.peek(2) == '*' || this.peek(2) == '!' || this.peek(2) == '/')) {
+                this.stripWhiteSpaceAndComments();
+                continue;
+            }
+
+            if (c == '"') {
+                this.position++;
+                this.scanStringLexeme();
+            } else if (c == '\n')
+                this.lineNumber++;
+            else if (c == '}' && depth == 1)
+                return;
+            else if (c == '}')
+                depth--;
+            else if (c == '{')
+                depth++;
+            this.position++;
+        }
+    }
+
+    /**
+     * Get the next token by reading the next values in the input stream.
+     * @return Token
+     * @exception TokenizerException thrown if the token is not valid.
+     */
+    public Token getNextToken() throws TokenizerException {
+        Token t = this.peekNextToken(1);
+        this.advance();
         return t;
     }
 
@@ -295,15 +593,25 @@ public class Tokenizer {
      * Peek the next token and return the result, without
      * reading ahead to the next token.
      * @return The next token.
-     * @throws IllegalArgumentException if the reader comes across a character that is unexpected.
-     * @throws IOException if the end of the file is reached, or problem with buffered reader
+     * @exception TokenizerException thrown if the token is not valid.
      */
     public Token peekNextToken() throws TokenizerException {
-        if (this.peeked)
-            return this.previousToken;
+        return this.peekNextToken(1);
+    }
 
-        Token nextToken = this.getNextToken();
-        this.peeked = true;
-        return nextToken;
+    /**
+     * Peek a token further ahead without reading past it.
+     * @param lookAhead how far ahead the token is, 1 for the next token.
+     * @return the token.
+     * @exception TokenizerException thrown if a token on the way is not valid.
+     */
+    public Token peekNextToken(int lookAhead) throws TokenizerException {
+        int slot = this.fill(lookAhead);
+        Token t = new Token();
+        t.lexeme = this.peekLexeme(lookAhead);
+        t.kind = KINDS[this.kinds[slot]];
+        t.type = t.kind.getType();
+        t.lineNumber = this.lines[slot];
+        return t;
     }
 }
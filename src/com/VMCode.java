@@ -0,0 +1,246 @@
+package com;
+
+import java.util.Arrays;
+
+/**
+ * The vm code of a subroutine, held as instructions rather than text so that
+ * it can be inspected and rewritten before it is written out. Each instruction
+ * is an opcode with up to two operands, stored in parallel arrays: a segment
+ * or kind of label, an int that is the index, constant, label number or count,
+ * and the name of the subroutine for a function or call.
+ *
+ * The text of the vm code is only produced once, when it is written.
+ */
+public class VMCode {
+    /**
+     * The vm commands.
+     */
+    public enum Opcode {
+        PUSH("push"), POP("pop"),
+        ADD("add"), SUB("sub"), NEG("neg"), EQ("eq"), GT("gt"), LT("lt"), AND("and"), OR("or"), NOT("not"),
+        LABEL("label"), GOTO("goto"), IF_GOTO("if-goto"),
+        FUNCTION("function"), CALL("call"), RETURN("return");
+
+        private final String text;
+
+        Opcode(String text) { this.text = text; }
+
+        /**
+         * Get the vm command of the opcode.
+         * @return the command.
+         */
+        public String getText() { return this.text; }
+    }
+
+    /**
+     * The memory segments that values are pushed from and popped to.
+     * NONE is used for a symbol that couldn't be resolved.
+     */
+    public enum Segment {
+        CONSTANT("constant"), ARGUMENT("argument"), LOCAL("local"), STATIC("static"),
+        THIS("this"), THAT("that"), POINTER("pointer"), TEMP("temp"), NONE("null");
+
+        private final String text;
+
+        Segment(String text) { this.text = text; }
+
+        /**
+         * Get the segment of a symbol.
+         * @param symbol the symbol, or null if it couldn't be resolved.
+         * @return the segment that the symbol is stored in.
+         */
+        public static Segment of(Symbol symbol) {
+            if (symbol == null)
+                return NONE;
+
+            switch (symbol.getKind()) {
+                case STATIC:
+                    return STATIC;
+                case FIELD:
+                    return THIS;
+                case LOCAL:
+                    return LOCAL;
+                case ARGUMENT:
+                    return ARGUMENT;
+                case POINTER:
+                    return POINTER;
+                default:
+                    return NONE;
+            }
+        }
+
+        /**
+         * Get the name of the segment in vm code.
+         * @return the name.
+         */
+        public String getText() { return this.text; }
+    }
+
+    /**
+     * The kinds of label written for if and while statements, which are numbered
+     * so that each statement has labels of its own. WHILE_BODY is only written
+     * by the optimizer, when it moves the condition of a loop to its end, and
+     * STRING_READY when a pooled string literal has already been built.
+     */
+    public enum Label {
+        IF_TRUE, IF_FALSE, IF_END, WHILE_EXP, WHILE_END, WHILE_BODY, STRING_READY
+    }
+
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final Segment[] SEGMENTS = Segment.values();
+    private static final Label[] LABELS = Label.values();
+
+    private byte[] opcodes;                                 // The ordinal of the opcode of each instruction.
+    private int[] operands;                                 // The ordinal of the segment or label of each instruction.
+    private int[] values;                                   // The index, constant, label number or count of each instruction.
+    private String[] names;                                 // The subroutine each function or call instruction names.
+    private int size;                                       // The number of instructions.
+
+    /**
+     * Create a subroutine with no instructions.
+     */
+    public VMCode() {
+        int capacity = 64;
+        this.opcodes = new byte[capacity];
+        this.operands = new int[capacity];
+        this.values = new int[capacity];
+        this.names = new String[capacity];
+    }
+
+    /**
+     * Add an instruction.
+     * @param opcode the opcode of the instruction.
+     * @param operand the ordinal of its segment or label, 0 if it has neither.
+     * @param value its index, constant, label number or count, 0 if it has none.
+     * @param name the subroutine it names, or null.
+     */
+    private void add(Opcode opcode, int operand, int value, String name) {
+        if (this.size == this.opcodes.length) {
+            int capacity = this.size * 2;
+            this.opcodes = Arrays.copyOf(this.opcodes, capacity);
+            this.operands = Arrays.copyOf(this.operands, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+            this.names = Arrays.copyOf(this.names, capacity);
+        }
+
+        this.opcodes[this.size] = (byte) opcode.ordinal();
+        this.operands[this.size] = operand;
+        this.values[this.size] = value;
+        this.names[this.size] = name;
+        this.size++;
+    }
+
+    /**
+     * Add an arithmetic or logical command, or a return.
+     * @param opcode the command.
+     */
+    public void add(Opcode opcode) { this.add(opcode, 0, 0, null); }
+
+    /**
+     * Add a push.
+     * @param segment the segment to push from.
+     * @param index the index in the segment, or the constant.
+     */
+    public void push(Segment segment, int index) { this.add(Opcode.PUSH, segment.ordinal(), index, null); }
+
+    /**
+     * Add a pop.
+     * @param segment the segment to pop to.
+     * @param index the index in the segment.
+     */
+    public void pop(Segment segment, int index) { this.add(Opcode.POP, segment.ordinal(), index, null); }
+
+    /**
+     * Add a label, goto or if-goto.
+     * @param opcode the command.
+     * @param label the kind of label.
+     * @param number the number of the statement the label belongs to.
+     */
+    public void label(Opcode opcode, Label label, int number) { this.add(opcode, label.ordinal(), number, null); }
+
+    /**
+     * Add the declaration of the function that the code belongs to.
+     * @param name the full name of the subroutine.
+     * @param localCount the number of local variables.
+     */
+    public void function(String name, int localCount) { this.add(Opcode.FUNCTION, 0, localCount, name); }
+
+    /**
+     * Add a call.
+     * @param name the full name of the subroutine called.
+     * @param argumentCount the number of arguments pushed.
+     */
+    public void call(String name, int argumentCount) { this.add(Opcode.CALL, 0, argumentCount, name); }
+
+    /**
+     * Add a copy of an instruction of other vm code.
+     * @param code the vm code holding the instruction.
+     * @param instruction the index of the instruction.
+     */
+    public void add(VMCode code, int instruction) {
+        this.add(OPCODES[code.opcodes[instruction]], code.operands[instruction], code.values[instruction], code.names[instruction]);
+    }
+
+    /**
+     * Remove an instruction, moving the instructions after it back by one.
+     * @param instruction the index of the instruction.
+     */
+    public void remove(int instruction) {
+        int moved = this.size - instruction - 1;
+        System.arraycopy(this.opcodes, instruction + 1, this.opcodes, instruction, moved);
+        System.arraycopy(this.operands, instruction + 1, this.operands, instruction, moved);
+        System.arraycopy(this.values, instruction + 1, this.values, instruction, moved);
+        System.arraycopy(this.names, instruction + 1, this.names, instruction, moved);
+        this.truncate(this.size - 1);
+    }
+
+    /**
+     * Remove the instructions at the end of the code.
+     * @param size the number of instructions to keep.
+     */
+    public void truncate(int size) {
+        Arrays.fill(this.names, size, this.size, null);
+        this.size = size;
+    }
+
+    /**
+     * Getters.
+     */
+    public int getSize() { return this.size; }
+    public Opcode getOpcode(int instruction) { return OPCODES[this.opcodes[instruction]]; }
+    public Segment getSegment(int instruction) { return SEGMENTS[this.operands[instruction]]; }
+    public Label getLabel(int instruction) { return LABELS[this.operands[instruction]]; }
+    public int getValue(int instruction) { return this.values[instruction]; }
+    public String getName(int instruction) { return this.names[instruction]; }
+
+    /**
+     * Append the text of the vm code, one command per line.
+     * @param text the builder to append to.
+     */
+    public void appendTo(StringBuilder text) {
+        for (int i = 0; i < this.size; i++) {
+            Opcode opcode = OPCODES[this.opcodes[i]];
+            text.append(opcode.getText());
+
+            switch (opcode) {
+                case PUSH:
+                case POP:
+                    text.append(' ').append(SEGMENTS[this.operands[i]].getText()).append(' ').append(this.values[i]);
+                    break;
+                case LABEL:
+                case GOTO:
+                case IF_GOTO:
+                    text.append(' ').append(LABELS[this.operands[i]].name()).append(this.values[i]);
+                    break;
+                case FUNCTION:
+                case CALL:
+                    text.append(' ').append(this.names[i]).append(' ').append(this.values[i]);
+                    break;
+                default:
+                    break;
+            }
+
+            text.append('\n');
+        }
+    }
+}
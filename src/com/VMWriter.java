@@ -1,20 +1,24 @@
 package com;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
 /**
- * The VMWriter writes lines to a new file replaced with the .vm extension.
+ * The VMWriter writes vm code to a new file replaced with the .vm extension.
  * Note: the file still has the same name.
+ * It can also write to any other writer, such as one that keeps the vm code in memory.
+ * The code generator gives it the vm code of each subroutine as instructions,
+ * which are only turned into text here.
  */
 public class VMWriter {
     private File file;
-    private BufferedWriter writer;
-    private StringBuilder code;
+    private Writer writer;
+    private final StringBuilder text;   // The text of the subroutine being written, reused for each one.
+    private final char[] chars;         // Buffer the text is copied out through.
 
     /**
      * Create the VMWriter object which provides a way to write the vm code
@@ -23,9 +27,31 @@ public class VMWriter {
      * @throws IOException throws an exception if the jack file cannot be opened.
      */
     public VMWriter(File jackFile) throws IOException {
-        this.file = changeExtension(jackFile, "(test).vm");
+        this.file = outputFile(jackFile);
         this.writer = Files.newBufferedWriter(Paths.get(file.getAbsolutePath()), StandardCharsets.UTF_8);
-        this.code = new StringBuilder();
+        this.text = new StringBuilder();
+        this.chars = new char[8192];
+    }
+
+    /**
+     * Create the VMWriter object which writes the vm code to the writer provided
+     * rather than to a file.
+     * @param writer the writer that the vm code is written to.
+     */
+    public VMWriter(Writer writer) {
+        this.file = null;
+        this.writer = writer;
+        this.text = new StringBuilder();
+        this.chars = new char[8192];
+    }
+
+    /**
+     * Get the .vm file that the vm code of a jack file is written to.
+     * @param jackFile the jack file that is being compiled.
+     * @return the file that the vm code is written to.
+     */
+    public static File outputFile(File jackFile) {
+        return changeExtension(jackFile, "(test).vm");
     }
 
     /**
@@ -40,13 +66,20 @@ public class VMWriter {
     }
 
     /**
-     * Write a new line to the .vm file.
-     * @param line the line to write.
+     * Write the vm code of a subroutine to the .vm file.
+     * @param code the vm code.
      * @throws IOException thrown if stream could not be written to.
      */
-    public void writeLine(String line) throws IOException {
-        this.writer.append(line);
-        this.writer.append("\n");
+    public void write(VMCode code) throws IOException {
+        this.text.setLength(0);
+        code.appendTo(this.text);
+
+        // Copied out in chunks so that the text never has to be made into a string
+        for (int start = 0; start < this.text.length(); start += this.chars.length) {
+            int end = Math.min(start + this.chars.length, this.text.length());
+            this.text.getChars(start, end, this.chars, 0);
+            this.writer.write(this.chars, 0, end - start);
+        }
     }
 
     /**
@@ -59,27 +92,8 @@ public class VMWriter {
         this.writer.close();
     }
 
-    /**
-     * Write a new line into a buffer which will be written to the file once
-     * writeNow() has been called.
-     * @param line the line to write.
-     */
-    public void writeLater(String line) {
-        this.code.append(line);
-        this.code.append("\n");
-    }
-
-    /**
-     * Write the buffer to the file.
-     * @throws IOException thrown if stream could not be written to.
-     */
-    public void writeNow() throws IOException {
-        this.writer.append(this.code.toString());
-        this.code.setLength(0);
-    }
-
     public void deleteFile() {
-        if (!this.file.delete()) {
+        if (this.file != null && !this.file.delete()) {
             System.err.println("Unable to clean up " + this.file.getName());
         }
     }